@@ -0,0 +1,149 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.enrichments.*;
+import net.redborder.samza.store.StoreManager;
+import net.redborder.samza.util.MacScramble;
+import net.redborder.samza.util.MockTaskContext;
+import net.redborder.samza.util.PostgresqlManager;
+import org.apache.samza.config.Config;
+import org.apache.samza.config.MapConfig;
+import org.apache.samza.storage.kv.KeyValueStore;
+import org.apache.samza.system.OutgoingMessageEnvelope;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.TaskContext;
+import org.bouncycastle.util.encoders.Hex;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Task wiring shared by the benchmarks: the store configuration of
+ * enrichment.properties over the in-memory test stores, filled with a profile for
+ * every generated client. The GeoIP databases and the MAC vendors file are read
+ * from the production paths unless -Dgeoip.dir and -Dmac.vendors say otherwise.
+ */
+public class BenchmarkContext {
+    public static final String[] STORES = {"nmsp-measure", "nmsp-info", "location", "postgresql", "radius"};
+
+    private final Config config;
+    private final TaskContext taskContext;
+    private final StoreManager storeManager;
+
+    public BenchmarkContext(MessageGenerator generator) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("redborder.stores", "nmsp-measure,nmsp-info,location,postgresql,radius");
+        properties.put("redborder.store.nmsp-measure.keys", "client_mac,namespace_uuid");
+        properties.put("redborder.store.nmsp-info.keys", "client_mac,namespace_uuid");
+        properties.put("redborder.store.radius.keys", "client_mac,namespace_uuid");
+        properties.put("redborder.store.location.keys", "client_mac,namespace_uuid");
+        properties.put("redborder.store.postgresql.keys", "wireless_station");
+        properties.put("redborder.store.postgresql.overwrite", "false");
+        properties.put("redborder.store.radius.overwrite", "false");
+        properties.put("redborder.rssiLimit.db", "-80");
+
+        config = new MapConfig(properties);
+        taskContext = new MockTaskContext();
+        storeManager = new StoreManager(config, taskContext);
+
+        // Half of the clients are known by the location store, every AP by postgresql
+        String[] clients = generator.getClientMacs();
+        KeyValueStore<String, Map<String, Object>> location = storeManager.getStore("location");
+        for (int i = 0; i < clients.length; i += 2) {
+            location.put(clients[i] + MessageGenerator.NAMESPACE_ID, generator.clientProfile());
+        }
+
+        KeyValueStore<String, Map<String, Object>> postgresql = storeManager.getStore("postgresql");
+        for (String ap : generator.getApMacs()) {
+            postgresql.put(ap, generator.clientProfile());
+        }
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public TaskContext getTaskContext() {
+        return taskContext;
+    }
+
+    public StoreManager getStoreManager() {
+        return storeManager;
+    }
+
+    /**
+     * Builds the given comma separated enrichments, "all" stands for the rb_flow chain.
+     */
+    public EnrichManager enrichManager(String enrichments) {
+        EnrichManager enrichManager = new EnrichManager();
+        PostgresqlManager postgresqlManager = postgresqlManager();
+
+        if (enrichments.equals("all")) {
+            enrichments = "mac_vendor,geo_ip,mac_hashing";
+        }
+
+        for (String enrichment : enrichments.split(",")) {
+            IEnrich enrich;
+
+            switch (enrichment) {
+                case "mac_vendor":
+                    MacVendorEnrich.ouiFilePath = System.getProperty("mac.vendors", MacVendorEnrich.ouiFilePath);
+                    enrich = new MacVendorEnrich();
+                    break;
+                case "geo_ip":
+                    String dir = System.getProperty("geoip.dir", "/opt/rb/share/GeoIP");
+                    GeoIpEnrich.CITY_DB_PATH = dir + "/city.dat";
+                    GeoIpEnrich.CITY_V6_DB_PATH = dir + "/cityv6.dat";
+                    GeoIpEnrich.ASN_DB_PATH = dir + "/asn.dat";
+                    GeoIpEnrich.ASN_V6_DB_PATH = dir + "/asnv6.dat";
+                    enrich = new GeoIpEnrich();
+                    break;
+                case "mac_hashing":
+                    enrich = new MacScramblingEnrich();
+                    break;
+                case "none":
+                    continue;
+                default:
+                    throw new IllegalArgumentException("Unknown enrichment " + enrichment);
+            }
+
+            enrich.setPostgresqlManager(postgresqlManager);
+            enrich.init(config, taskContext);
+            enrichManager.addEnrichment(enrich);
+        }
+
+        return enrichManager;
+    }
+
+    /**
+     * Manager without a database whose only service provider hashes MACs with a fixed salt.
+     */
+    public PostgresqlManager postgresqlManager() {
+        final Map<String, MacScramble> scrambles = Collections.singletonMap(MessageGenerator.SERVICE_PROVIDER_ID,
+                new MacScramble(Hex.decode("0123456789abcdef0123456789abcdef"), null));
+
+        return new PostgresqlManager(config, storeManager) {
+            @Override
+            public Map<String, MacScramble> getScrambles() {
+                return scrambles;
+            }
+        };
+    }
+
+    /**
+     * Collector that hands every message to the blackhole of the running benchmark.
+     */
+    public static class BlackholeCollector implements MessageCollector {
+        private Blackhole blackhole;
+
+        public void setBlackhole(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void send(OutgoingMessageEnvelope envelope) {
+            blackhole.consume(envelope.getMessage());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.enrichments.EnrichManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each enrichment on its own and the whole rb_flow chain. Every run enriches a copy
+ * of the generated message, the "none" chain measures that copy alone. A parallelism
+ * above zero runs the independent enrichments of each message at once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EnrichManagerBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"none", "mac_vendor", "geo_ip", "mac_hashing", "all"})
+    public String enrichments;
+
+    @Param({"0", "2"})
+    public int parallelism;
+
+    private EnrichManager enrichManager;
+    private Map<String, Object>[] messages;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        MessageGenerator generator = new MessageGenerator(42L, 5000);
+        enrichManager = new BenchmarkContext(generator).enrichManager(enrichments);
+        enrichManager.setParallelism(parallelism);
+
+        long now = System.currentTimeMillis() / 1000;
+        messages = new Map[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = generator.flow(now, 60);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> enrich() {
+        return enrichManager.enrich(new HashMap<>(messages[next++ & (MESSAGES - 1)]));
+    }
+}
@@ -0,0 +1,54 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.processors.FlowProcessor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole rb_flow path: store merge, enrichments, duration, split and send.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FlowProcessorBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"none", "all"})
+    public String enrichments;
+
+    private FlowProcessor processor;
+    private BenchmarkContext.BlackholeCollector collector;
+    private Map<String, Object>[] messages;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        MessageGenerator generator = new MessageGenerator(42L, 5000);
+        BenchmarkContext context = new BenchmarkContext(generator);
+
+        processor = new FlowProcessor(context.getStoreManager(), context.enrichManager(enrichments),
+                context.getConfig(), context.getTaskContext());
+        collector = new BenchmarkContext.BlackholeCollector();
+
+        // Flows of up to five minutes that end now, so none of them is dropped
+        long now = System.currentTimeMillis() / 1000;
+        messages = new Map[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = generator.flow(now, i % 300);
+        }
+    }
+
+    @Benchmark
+    public void process(Blackhole blackhole) {
+        collector.setBlackhole(blackhole);
+        // FlowProcessor works on its own FlowRecord, the template is left untouched
+        processor.process(messages[next++ & (MESSAGES - 1)], collector);
+    }
+}
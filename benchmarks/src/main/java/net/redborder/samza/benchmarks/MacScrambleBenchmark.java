@@ -0,0 +1,45 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.util.MacScramble;
+import org.bouncycastle.util.encoders.Hex;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scrambling one MAC with each mode, without the enrichment cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MacScrambleBenchmark {
+    private static final int MACS = 1024;
+
+    @Param({"pbkdf2", "hmac-sha256"})
+    public String mode;
+
+    private MacScramble scramble;
+    private byte[][] macs;
+    private int next;
+
+    @Setup
+    public void setup() {
+        scramble = new MacScramble(Hex.decode("6A285A12B390A55E021EB983B20D5F4E"), null, MacScramble.Mode.fromName(mode));
+
+        Random random = new Random(42L);
+        macs = new byte[MACS][6];
+        for (byte[] mac : macs) {
+            random.nextBytes(mac);
+        }
+    }
+
+    @Benchmark
+    public byte[] scramble() throws GeneralSecurityException {
+        return scramble.scrambleMac(macs[next++ & (MACS - 1)]);
+    }
+}
@@ -0,0 +1,117 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.util.constants.DimensionValue;
+
+import java.util.*;
+
+import static net.redborder.samza.util.constants.Dimension.*;
+
+/**
+ * Builds rb_flow and rb_nmsp messages shaped like the ones the sensors send. Clients
+ * are drawn from a fixed pool so the stores see the same hit ratio on every run.
+ */
+public class MessageGenerator {
+    public static final String NAMESPACE_ID = "11111111-1111-1111-1111-111111111111";
+    public static final String SERVICE_PROVIDER_ID = "22222222-2222-2222-2222-222222222222";
+
+    private static final String[] OUIS = {"00:1c:b3", "f0:b4:79", "a4:5e:60", "00:27:0d", "3c:15:c2", "d8:96:95"};
+    private static final String[] APPLICATIONS = {"dns", "google", "facebook", "youtube", "ssl", "http", "netflix"};
+    private static final String[] SENSORS = {"ISG", "ASR-Madrid", "ASR-Malaga", "Core-1"};
+
+    private final Random random;
+    private final String[] clientMacs;
+    private final String[] apMacs;
+
+    public MessageGenerator(long seed, int clients) {
+        this.random = new Random(seed);
+        this.clientMacs = new String[clients];
+        this.apMacs = new String[Math.max(1, clients / 20)];
+
+        for (int i = 0; i < clientMacs.length; i++) clientMacs[i] = mac();
+        for (int i = 0; i < apMacs.length; i++) apMacs[i] = mac();
+    }
+
+    public String[] getClientMacs() {
+        return clientMacs;
+    }
+
+    public String[] getApMacs() {
+        return apMacs;
+    }
+
+    public Map<String, Object> flow(long now, int durationSeconds) {
+        Map<String, Object> message = new HashMap<>();
+        long timestamp = now - random.nextInt(5);
+        int pkts = 1 + random.nextInt(2000);
+
+        message.put(TYPE, "NetFlowv10");
+        message.put("flow_sequence", String.valueOf(random.nextInt(100000)));
+        message.put(SRC_IP, "192.168." + random.nextInt(256) + "." + random.nextInt(256));
+        message.put(DST_IP, random.nextInt(224) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256));
+        message.put(SRC_PORT, String.valueOf(1024 + random.nextInt(64000)));
+        message.put(DST_PORT, random.nextBoolean() ? "443" : "80");
+        message.put(L4_PROTO, 6);
+        message.put(IP_PROTOCOL_VERSION, 4);
+        message.put(BYTES, (long) pkts * (60 + random.nextInt(1400)));
+        message.put(PKTS, (long) pkts);
+        message.put(FIRST_SWITCHED, timestamp - durationSeconds);
+        message.put(TIMESTAMP, timestamp);
+        message.put(SENSOR_IP, "90.1.44." + random.nextInt(8));
+        message.put(SENSOR_NAME, SENSORS[random.nextInt(SENSORS.length)]);
+        message.put(DIRECTION, random.nextBoolean() ? "upstream" : "downstream");
+        message.put(ENGINE_ID_NAME, "PANA-L7");
+        message.put(APPLICATION_ID_NAME, APPLICATIONS[random.nextInt(APPLICATIONS.length)]);
+        message.put(BIFLOW_DIRECTION, "initiator");
+        message.put(CLIENT_MAC, clientMacs[random.nextInt(clientMacs.length)]);
+        message.put(WIRELESS_STATION, apMacs[random.nextInt(apMacs.length)]);
+        message.put(NAMESPACE_UUID, NAMESPACE_ID);
+        message.put(SERVICE_PROVIDER_UUID, SERVICE_PROVIDER_ID);
+
+        return message;
+    }
+
+    public Map<String, Object> nmspMeasure() {
+        Map<String, Object> message = new HashMap<>();
+        int aps = 1 + random.nextInt(4);
+        List<String> macs = new ArrayList<>(aps);
+        List<Integer> rssis = new ArrayList<>(aps);
+
+        for (int i = 0; i < aps; i++) {
+            macs.add(apMacs[random.nextInt(apMacs.length)]);
+            rssis.add(-30 - random.nextInt(60));
+        }
+
+        message.put(TYPE, DimensionValue.NMSP_TYPE_MEASURE);
+        message.put(CLIENT_MAC, clientMacs[random.nextInt(clientMacs.length)]);
+        message.put(NMSP_AP_MAC, macs);
+        message.put(NMSP_RSSI, rssis);
+        message.put(NAMESPACE_UUID, NAMESPACE_ID);
+        message.put(SENSOR_NAME, SENSORS[random.nextInt(SENSORS.length)]);
+
+        return message;
+    }
+
+    /**
+     * Profile of a client as the location and radius processors leave it in the stores.
+     */
+    public Map<String, Object> clientProfile() {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put(CAMPUS, "Campus " + random.nextInt(4));
+        profile.put(BUILDING, "Building " + random.nextInt(10));
+        profile.put(FLOOR, "Floor " + random.nextInt(5));
+        profile.put(ZONE, "Zone " + random.nextInt(20));
+        profile.put(CLIENT_LATLNG, "40.41" + random.nextInt(100) + ",-3.70" + random.nextInt(100));
+        profile.put(CLIENT_RSSI_NUM, -30 - random.nextInt(60));
+        profile.put(CLIENT_PROFILE, "hard");
+        profile.put(WIRELESS_ID, "rb-corporate");
+        return profile;
+    }
+
+    private String mac() {
+        StringBuilder builder = new StringBuilder(OUIS[random.nextInt(OUIS.length)]);
+        for (int i = 0; i < 3; i++) {
+            builder.append(':').append(String.format("%02x", random.nextInt(256)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.processors.NmspProcessor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NMSP measures of known and unknown clients, including the store updates they cause.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NmspProcessorBenchmark {
+    private static final int MESSAGES = 1024;
+
+    private NmspProcessor processor;
+    private BenchmarkContext.BlackholeCollector collector;
+    private Map<String, Object>[] messages;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        MessageGenerator generator = new MessageGenerator(42L, 5000);
+        BenchmarkContext context = new BenchmarkContext(generator);
+
+        processor = new NmspProcessor(context.getStoreManager(), context.enrichManager("mac_hashing"),
+                context.getConfig(), context.getTaskContext());
+        collector = new BenchmarkContext.BlackholeCollector();
+
+        messages = new Map[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = generator.nmspMeasure();
+        }
+    }
+
+    @Benchmark
+    public void process(Blackhole blackhole) {
+        collector.setBlackhole(blackhole);
+        processor.process(new HashMap<>(messages[next++ & (MESSAGES - 1)]), collector);
+    }
+}
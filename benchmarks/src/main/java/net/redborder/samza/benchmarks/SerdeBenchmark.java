@@ -0,0 +1,95 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.serializers.FlowJsonSerdeFactory;
+import org.apache.samza.serializers.JsonSerdeFactory;
+import org.apache.samza.serializers.Serde;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock JsonSerde against FlowJsonSerde decoding rb_flow messages and encoding them back.
+ * The messages are the captured ones of the samples file, one per line, which include
+ * nested objects and arrays, or flat flows built by the generator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SerdeBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"json", "flow"})
+    public String serde;
+
+    @Param({"samples", "generated"})
+    public String input;
+
+    @Param({"src/test/resources/rb_flow_samples.json"})
+    public String samplesFile;
+
+    private Serde<Object> instance;
+    private byte[][] messages;
+    private Object[] decoded;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        Serde<Object> json = new JsonSerdeFactory().getSerde("json", null);
+        instance = serde.equals("flow") ? new FlowJsonSerdeFactory().getSerde(serde, null) : json;
+
+        messages = new byte[MESSAGES][];
+        decoded = new Object[MESSAGES];
+
+        if (input.equals("samples")) {
+            List<byte[]> samples = load(samplesFile);
+            if (samples.isEmpty()) throw new IllegalArgumentException("No messages in " + samplesFile);
+
+            for (int i = 0; i < MESSAGES; i++) {
+                messages[i] = samples.get(i % samples.size());
+            }
+        } else {
+            MessageGenerator generator = new MessageGenerator(42L, 5000);
+            long now = System.currentTimeMillis() / 1000;
+
+            for (int i = 0; i < MESSAGES; i++) {
+                messages[i] = json.toBytes(generator.flow(now, i % 300));
+            }
+        }
+
+        for (int i = 0; i < MESSAGES; i++) {
+            decoded[i] = instance.fromBytes(messages[i]);
+        }
+    }
+
+    private static List<byte[]> load(String path) throws IOException {
+        List<byte[]> samples = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty()) samples.add(line.getBytes("UTF-8"));
+        }
+
+        reader.close();
+        return samples;
+    }
+
+    @Benchmark
+    public Object decode() {
+        return instance.fromBytes(messages[next++ & (MESSAGES - 1)]);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return instance.toBytes(decoded[next++ & (MESSAGES - 1)]);
+    }
+}
@@ -0,0 +1,49 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.functions.SplitFlowFunction;
+import net.redborder.samza.util.FlowRecord;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Split of flows into minute buckets for flows lasting from none to almost an hour.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SplitFlowBenchmark {
+    private static final int MESSAGES = 256;
+
+    @Param({"0", "30", "300", "1800", "3500"})
+    public int durationSeconds;
+
+    private DateTime now;
+    private FlowRecord[] messages;
+    private int next;
+
+    @Setup
+    public void setup() {
+        MessageGenerator generator = new MessageGenerator(42L, 5000);
+
+        // Late in the hour so even the longest flows fit in the realtime window
+        now = new DateTime(2016, 4, 6, 10, 59, 30, DateTimeZone.UTC);
+        messages = new FlowRecord[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = new FlowRecord(generator.flow(now.getMillis() / 1000, durationSeconds));
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> split() {
+        // Split may correct the times of the flow, so it works on a copy
+        return SplitFlowFunction.split(messages[next++ & (MESSAGES - 1)].copy(), now);
+    }
+}
@@ -0,0 +1,49 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.store.StoreManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge of the store contents into a flow. Every run enriches a copy of the
+ * generated message, copyOnly measures that copy alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StoreManagerBenchmark {
+    private static final int MESSAGES = 1024;
+
+    private StoreManager storeManager;
+    private Map<String, Object>[] messages;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        MessageGenerator generator = new MessageGenerator(42L, 5000);
+        storeManager = new BenchmarkContext(generator).getStoreManager();
+
+        long now = System.currentTimeMillis() / 1000;
+        messages = new Map[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = generator.flow(now, 60);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> enrich() {
+        return storeManager.enrich(new HashMap<>(messages[next++ & (MESSAGES - 1)]));
+    }
+
+    @Benchmark
+    public Map<String, Object> copyOnly() {
+        return new HashMap<>(messages[next++ & (MESSAGES - 1)]);
+    }
+}
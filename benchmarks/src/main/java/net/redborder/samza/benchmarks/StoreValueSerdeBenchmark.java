@@ -0,0 +1,55 @@
+package net.redborder.samza.benchmarks;
+
+import net.redborder.samza.serializers.StoreValueSerdeFactory;
+import org.apache.samza.serializers.JsonSerdeFactory;
+import org.apache.samza.serializers.Serde;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stock JsonSerde against StoreValueSerde decoding client profiles, as the stores
+ * hold them, and encoding them back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StoreValueSerdeBenchmark {
+    private static final int VALUES = 1024;
+
+    @Param({"json", "store"})
+    public String serde;
+
+    private Serde<Object> instance;
+    private byte[][] values;
+    private Object[] decoded;
+    private int next;
+
+    @Setup
+    public void setup() {
+        MessageGenerator generator = new MessageGenerator(42L, 5000);
+        instance = serde.equals("store")
+                ? new StoreValueSerdeFactory().getSerde(serde, null)
+                : new JsonSerdeFactory().getSerde(serde, null);
+
+        values = new byte[VALUES][];
+        decoded = new Object[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = instance.toBytes(generator.clientProfile());
+            decoded[i] = instance.fromBytes(values[i]);
+        }
+    }
+
+    @Benchmark
+    public Object decode() {
+        return instance.fromBytes(values[next++ & (VALUES - 1)]);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return instance.toBytes(decoded[next++ & (VALUES - 1)]);
+    }
+}
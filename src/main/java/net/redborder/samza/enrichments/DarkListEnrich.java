@@ -1,104 +1,106 @@
 package net.redborder.samza.enrichments;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import net.redborder.samza.util.PostgresqlManager;
 import net.redborder.samza.util.constants.Dimension;
+import org.apache.samza.config.Config;
+import org.apache.samza.metrics.Gauge;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.task.TaskContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class DarkListEnrich implements IEnrich {
     private static final Logger log = LoggerFactory.getLogger(DarkListEnrich.class);
 
-    final String IP_FILE = "/tmp/darklist.json";
-    Map<String, Map<String, Object>> ipCache = new HashMap<>();
+    /**
+     * Path to the darklist file, or to a directory of darklist files.
+     */
+    public static String IP_FILE = "/tmp/darklist.json";
+    /**
+     * Darklist shared with the rest of the tasks of the container.
+     */
+    DarkListProvider provider;
+    /**
+     * Index used by the last lookups.
+     */
+    DarkListIndex index;
+    private Gauge<Long> version = new Gauge<>("version", 0L);
+    private Gauge<Integer> entries = new Gauge<>("entries", 0);
+    private Gauge<Long> loadMillis = new Gauge<>("load-ms", 0L);
 
     public DarkListEnrich() {
-        ObjectMapper mapper = new ObjectMapper();
-
-        try {
-            List<Map<String, Object>> ipDatas = mapper.readValue(new File(IP_FILE), List.class);
-
-            for (Map<String, Object> ipData : ipDatas) {
-                String ip = (String) ipData.get("ip");
-                Map<String, Object> data = (Map<String, Object>) ipData.get("enrich_with");
-
-                ipCache.put(ip, data);
-            }
-        } catch (IOException e) {
-            log.error("Error initiating darklist cache from file. ", e);
-        }
+        provider = DarkListProvider.get(IP_FILE);
+    }
 
-        log.info("Created DarklistCache: {}", ipCache.keySet().toString());
+    private static int score(Map<String, Object> data) {
+        Object score = data.get(Dimension.DARKLIST_SCORE);
+        return score instanceof Number ? ((Number) score).intValue() : 0;
     }
 
     @Override
-    public Map<String, Object> enrich(Map<String, Object> message) {
-        Map<String, Object> enrichment = new HashMap<>();
-        enrichment.putAll(message);
+    public void enrich(Map<String, Object> message) {
+        DarkListIndex current = provider.index();
+        if (current != index) {
+            index = current;
+            version.set(provider.version());
+            entries.set(current.size());
+            loadMillis.set(provider.loadMillis());
+        }
 
         String src = (String) message.get("src");
         String dst = (String) message.get("dst");
 
-        if (src != null && dst != null) {
-            Map<String, Object> srcData = ipCache.get(src);
-            Map<String, Object> dstData = ipCache.get(dst);
-
-            if (srcData != null && dstData != null) {
-                Integer srcScore = (Integer) srcData.get("darklist_score");
-                Integer dstScore = (Integer) dstData.get("darklist_score");
-
-                if (srcScore > dstScore) {
-                    enrichment.putAll(srcData);
-                } else {
-                    enrichment.putAll(dstData);
-                }
-
-                enrichment.put("darklist_direction", "both");
-            } else if (srcData != null) {
-                enrichment.putAll(srcData);
-                enrichment.put("darklist_direction", "source");
-            } else if (dstData != null) {
-                enrichment.putAll(dstData);
-                enrichment.put("darklist_direction", "destination");
-            } else {
-                enrichment.put(Dimension.DARKLIST_DIRECTION, "clean");
-                enrichment.put(Dimension.DARKLIST_CATEGORY, "clean");
-            }
+        Map<String, Object> srcData = src != null ? index.lookup(src) : null;
+        Map<String, Object> dstData = dst != null ? index.lookup(dst) : null;
 
-        } else if (src != null) {
-            Map<String, Object> srcData = ipCache.get(src);
-            if (srcData != null) {
-                enrichment.putAll(srcData);
-                enrichment.put("darklist_direction", "source");
-            } else {
-                enrichment.put(Dimension.DARKLIST_DIRECTION, "clean");
-                enrichment.put(Dimension.DARKLIST_CATEGORY, "clean");
-            }
-        } else if (dst != null) {
-            Map<String, Object> dstData = ipCache.get(dst);
-            if (dstData != null) {
-                enrichment.putAll(dstData);
-                enrichment.put("darklist_direction", "destination");
+        if (srcData != null && dstData != null) {
+            if (score(srcData) > score(dstData)) {
+                message.putAll(srcData);
             } else {
-                enrichment.put(Dimension.DARKLIST_DIRECTION, "clean");
-                enrichment.put(Dimension.DARKLIST_CATEGORY, "clean");
+                message.putAll(dstData);
             }
+
+            message.put(Dimension.DARKLIST_DIRECTION, "both");
+        } else if (srcData != null) {
+            message.putAll(srcData);
+            message.put(Dimension.DARKLIST_DIRECTION, "source");
+        } else if (dstData != null) {
+            message.putAll(dstData);
+            message.put(Dimension.DARKLIST_DIRECTION, "destination");
         } else {
-            enrichment.put(Dimension.DARKLIST_DIRECTION, "clean");
-            enrichment.put(Dimension.DARKLIST_CATEGORY, "clean");
+            message.put(Dimension.DARKLIST_DIRECTION, "clean");
+            message.put(Dimension.DARKLIST_CATEGORY, "clean");
         }
-
-        return enrichment;
     }
 
     @Override
     public void setPostgresqlManager(PostgresqlManager postgresqlManager) {
         //Nothing
     }
+
+    @Override
+    public void init(Config config, TaskContext context) {
+        MetricsRegistry metrics = context.getMetricsRegistry();
+        String group = getClass().getName();
+
+        version = metrics.newGauge(group, "darklist-version", 0L);
+        entries = metrics.newGauge(group, "darklist-entries", 0);
+        loadMillis = metrics.newGauge(group, "darklist-load-ms", 0L);
+        index = null;
+    }
+
+    @Override
+    public Set<String> inputFields() {
+        // It always runs, messages without addresses are marked as clean, but it reads src and dst
+        return null;
+    }
+
+    @Override
+    public Set<String> outputFields() {
+        // Every field under enrich_with in the darklist is copied, whatever the file holds
+        return null;
+    }
 }
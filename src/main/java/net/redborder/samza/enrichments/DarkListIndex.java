@@ -0,0 +1,363 @@
+package net.redborder.samza.enrichments;
+
+import net.redborder.samza.util.IpAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reputation of IPv4 and IPv6 addresses and networks. Addresses and networks are
+ * kept in open addressing tables of primitive keys, and every entry points to one
+ * of the distinct reputations of the list, so millions of entries cost a few
+ * arrays instead of millions of maps. Addresses are looked up by their longest
+ * listed network. The index is never modified once built.
+ *
+ * <p>Nearly every address is not listed, so lookups first probe a blocked Bloom
+ * filter of the entries masked to the shortest listed prefix. Any address inside
+ * a listed network has the same masked value as that network, so the filter never
+ * rejects a listed address, and most clean ones cost a single memory access.</p>
+ */
+public class DarkListIndex {
+    public static final DarkListIndex EMPTY = new Builder().build();
+
+    // IPv4 keys are the masked address shifted left six bits plus the prefix
+    // length plus one, so they are never 0
+    private final long[] v4Keys;
+    private final int[] v4Values;
+    private final int[] v4Bits;
+
+    // IPv6 entries are empty while their length, the prefix length plus one, is 0
+    private final long[] v6Highs;
+    private final long[] v6Lows;
+    private final byte[] v6Lengths;
+    private final int[] v6Values;
+    private final int[] v6Bits;
+
+    // Blocked Bloom filters, one word per masked address
+    private final long[] v4Filter;
+    private final long[] v6Filter;
+
+    private final Map<String, Object>[] profiles;
+    private final int size;
+
+    private DarkListIndex(Builder builder) {
+        int v4Capacity = capacity(builder.v4Count);
+        v4Keys = new long[v4Capacity];
+        v4Values = new int[v4Capacity];
+        for (int i = 0; i < builder.v4Count; i++) {
+            putIPv4(builder.v4Keys[i], builder.v4Values[i]);
+        }
+
+        int v6Capacity = capacity(builder.v6Count);
+        v6Highs = new long[v6Capacity];
+        v6Lows = new long[v6Capacity];
+        v6Lengths = new byte[v6Capacity];
+        v6Values = new int[v6Capacity];
+        for (int i = 0; i < builder.v6Count; i++) {
+            putIPv6(builder.v6Highs[i], builder.v6Lows[i], builder.v6Lengths[i], builder.v6Values[i]);
+        }
+
+        v4Bits = prefixBits(builder.v4Bits);
+        v6Bits = prefixBits(builder.v6Bits);
+
+        v4Filter = new long[filterWords(builder.v4Count)];
+        for (int i = 0; i < builder.v4Count; i++) {
+            long address = builder.v4Keys[i] >>> 6;
+            addToFilter(v4Filter, 0L, address & v4Mask(shortest(v4Bits)));
+        }
+
+        v6Filter = new long[filterWords(builder.v6Count)];
+        for (int i = 0; i < builder.v6Count; i++) {
+            int bits = shortest(v6Bits);
+            addToFilter(v6Filter, builder.v6Highs[i] & highMask(bits), builder.v6Lows[i] & lowMask(bits));
+        }
+
+        profiles = builder.profiles.toArray(new Map[builder.profiles.size()]);
+
+        int size = 0;
+        for (long key : v4Keys) if (key != 0) size++;
+        for (byte length : v6Lengths) if (length != 0) size++;
+        this.size = size;
+    }
+
+    private static int capacity(int entries) {
+        return Integer.highestOneBit(Math.max(entries, 1) * 2 - 1) << 1;
+    }
+
+    // A word per 4 entries rounded up to a power of two, 16 to 32 bits per entry,
+    // which keeps false positives at about 0.5% at most
+    private static int filterWords(int entries) {
+        return Integer.highestOneBit(Math.max(entries / 4, 1) * 2 - 1);
+    }
+
+    private static int shortest(int[] bits) {
+        return bits.length == 0 ? 0 : bits[bits.length - 1];
+    }
+
+    private static long filterHash(long high, long low) {
+        long hash = (high ^ 0x632BE59BD9B4E019L) * 0x9E3779B97F4A7C15L + low;
+        hash = (hash ^ (hash >>> 31)) * 0xBF58476D1CE4E5B9L;
+        return hash ^ (hash >>> 29);
+    }
+
+    // Low bits pick the word and each 6 bit group above them one bit of it
+    private static long filterBits(long hash) {
+        return (1L << (hash >>> 40)) | (1L << (hash >>> 46)) | (1L << (hash >>> 52)) | (1L << (hash >>> 58));
+    }
+
+    private static void addToFilter(long[] filter, long high, long low) {
+        long hash = filterHash(high, low);
+        filter[(int) hash & (filter.length - 1)] |= filterBits(hash);
+    }
+
+    private static boolean mayContain(long[] filter, long high, long low) {
+        long hash = filterHash(high, low);
+        long bits = filterBits(hash);
+        return (filter[(int) hash & (filter.length - 1)] & bits) == bits;
+    }
+
+    private static int[] prefixBits(boolean[] present) {
+        int count = 0;
+        for (boolean bits : present) if (bits) count++;
+
+        // Longest first, so the most specific network wins
+        int[] bits = new int[count];
+        for (int i = present.length - 1, j = 0; i >= 0; i--) {
+            if (present[i]) bits[j++] = i;
+        }
+
+        return bits;
+    }
+
+    private void putIPv4(long key, int value) {
+        int mask = v4Keys.length - 1;
+        int slot = slot(key, 0L, mask);
+        while (v4Keys[slot] != 0 && v4Keys[slot] != key) slot = (slot + 1) & mask;
+        v4Keys[slot] = key;
+        v4Values[slot] = value;
+    }
+
+    private void putIPv6(long high, long low, byte length, int value) {
+        int mask = v6Lengths.length - 1;
+        int slot = slot(high, low ^ length, mask);
+
+        while (v6Lengths[slot] != 0 &&
+                !(v6Highs[slot] == high && v6Lows[slot] == low && v6Lengths[slot] == length)) {
+            slot = (slot + 1) & mask;
+        }
+
+        v6Highs[slot] = high;
+        v6Lows[slot] = low;
+        v6Lengths[slot] = length;
+        v6Values[slot] = value;
+    }
+
+    private static int slot(long high, long low, int mask) {
+        long hash = high * 0x9E3779B97F4A7C15L + low;
+        hash ^= hash >>> 32;
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    private static long v4Key(long address, int bits) {
+        return ((address & v4Mask(bits)) << 6) | (bits + 1);
+    }
+
+    private static long v4Mask(int bits) {
+        return bits == 0 ? 0L : (0xFFFFFFFFL << (32 - bits)) & 0xFFFFFFFFL;
+    }
+
+    private static long highMask(int bits) {
+        if (bits == 0) return 0L;
+        return bits >= 64 ? -1L : -1L << (64 - bits);
+    }
+
+    private static long lowMask(int bits) {
+        return bits <= 64 ? 0L : -1L << (128 - bits);
+    }
+
+    /**
+     * Number of listed addresses and networks.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of distinct reputations.
+     */
+    public int profiles() {
+        return profiles.length;
+    }
+
+    /**
+     * Reputation of a textual IPv4 or IPv6 address, or null if it is not listed.
+     */
+    public Map<String, Object> lookup(String ip) {
+        long ipv4 = IpAddress.parseIPv4(ip);
+        if (ipv4 >= 0) return lookupIPv4(ipv4);
+
+        if (v6Bits.length > 0) {
+            byte[] address = new byte[16];
+            if (IpAddress.parseIPv6(ip, address)) return lookupIPv6(toLong(address, 0), toLong(address, 8));
+        }
+
+        return null;
+    }
+
+    /**
+     * Reputation of an IPv4 address given as an unsigned 32 bit value.
+     */
+    public Map<String, Object> lookupIPv4(long address) {
+        if (v4Bits.length == 0 || !mayContain(v4Filter, 0L, address & v4Mask(shortest(v4Bits)))) return null;
+        int mask = v4Keys.length - 1;
+
+        for (int bits : v4Bits) {
+            long key = v4Key(address, bits);
+
+            for (int slot = slot(key, 0L, mask); v4Keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (v4Keys[slot] == key) return profiles[v4Values[slot]];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reputation of an IPv6 address given as its high and low 64 bits.
+     */
+    public Map<String, Object> lookupIPv6(long high, long low) {
+        int shortest = shortest(v6Bits);
+        if (v6Bits.length == 0 || !mayContain(v6Filter, high & highMask(shortest), low & lowMask(shortest))) return null;
+        int mask = v6Lengths.length - 1;
+
+        for (int bits : v6Bits) {
+            long maskedHigh = high & highMask(bits);
+            long maskedLow = low & lowMask(bits);
+            byte length = (byte) (bits + 1);
+
+            for (int slot = slot(maskedHigh, maskedLow ^ length, mask); v6Lengths[slot] != 0; slot = (slot + 1) & mask) {
+                if (v6Highs[slot] == maskedHigh && v6Lows[slot] == maskedLow && v6Lengths[slot] == length) {
+                    return profiles[v6Values[slot]];
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+
+        return value;
+    }
+
+    /**
+     * Collects the entries of a darklist. Later entries of the same address or
+     * network replace earlier ones.
+     */
+    public static class Builder {
+        private long[] v4Keys = new long[16];
+        private int[] v4Values = new int[16];
+        private int v4Count;
+        private final boolean[] v4Bits = new boolean[33];
+
+        private long[] v6Highs = new long[16];
+        private long[] v6Lows = new long[16];
+        private byte[] v6Lengths = new byte[16];
+        private int[] v6Values = new int[16];
+        private int v6Count;
+        private final boolean[] v6Bits = new boolean[129];
+
+        private final List<Map<String, Object>> profiles = new ArrayList<>();
+        private final Map<Map<String, Object>, Integer> profileIds = new HashMap<>();
+        private final byte[] address = new byte[16];
+
+        /**
+         * Adds the reputation of an address or a network such as 10.0.0.0/8.
+         *
+         * @return false if the address or the prefix length is not valid
+         */
+        public boolean add(String ip, Map<String, Object> reputation) {
+            int slash = ip.indexOf('/');
+            String host = slash >= 0 ? ip.substring(0, slash) : ip;
+            int bits = slash >= 0 ? parseBits(ip.substring(slash + 1)) : -1;
+            if (slash >= 0 && bits < 0) return false;
+
+            long ipv4 = IpAddress.parseIPv4(host);
+            if (ipv4 >= 0) {
+                if (bits < 0) bits = 32;
+                if (bits > 32) return false;
+
+                if (v4Count == v4Keys.length) {
+                    v4Keys = Arrays.copyOf(v4Keys, v4Count * 2);
+                    v4Values = Arrays.copyOf(v4Values, v4Count * 2);
+                }
+
+                v4Keys[v4Count] = v4Key(ipv4, bits);
+                v4Values[v4Count++] = profile(reputation);
+                v4Bits[bits] = true;
+                return true;
+            }
+
+            if (IpAddress.parseIPv6(host, address)) {
+                if (bits < 0) bits = 128;
+                if (bits > 128) return false;
+
+                if (v6Count == v6Highs.length) {
+                    v6Highs = Arrays.copyOf(v6Highs, v6Count * 2);
+                    v6Lows = Arrays.copyOf(v6Lows, v6Count * 2);
+                    v6Lengths = Arrays.copyOf(v6Lengths, v6Count * 2);
+                    v6Values = Arrays.copyOf(v6Values, v6Count * 2);
+                }
+
+                v6Highs[v6Count] = toLong(address, 0) & highMask(bits);
+                v6Lows[v6Count] = toLong(address, 8) & lowMask(bits);
+                v6Lengths[v6Count] = (byte) (bits + 1);
+                v6Values[v6Count++] = profile(reputation);
+                v6Bits[bits] = true;
+                return true;
+            }
+
+            return false;
+        }
+
+        private static int parseBits(String bits) {
+            if (bits.isEmpty() || bits.length() > 3) return -1;
+
+            int value = 0;
+            for (int i = 0; i < bits.length(); i++) {
+                char c = bits.charAt(i);
+                if (c < '0' || c > '9') return -1;
+                value = value * 10 + (c - '0');
+            }
+
+            return value;
+        }
+
+        // Every distinct reputation is kept once no matter how many entries have it
+        private int profile(Map<String, Object> reputation) {
+            Integer id = profileIds.get(reputation);
+
+            if (id == null) {
+                Map<String, Object> profile = Collections.unmodifiableMap(new HashMap<>(reputation));
+                id = profiles.size();
+                profiles.add(profile);
+                profileIds.put(profile, id);
+            }
+
+            return id;
+        }
+
+        public DarkListIndex build() {
+            return new DarkListIndex(this);
+        }
+    }
+}
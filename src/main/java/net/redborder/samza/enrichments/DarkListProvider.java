@@ -0,0 +1,223 @@
+package net.redborder.samza.enrichments;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.redborder.samza.util.FileWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Darklist index shared by every task of the container. The darklist is either a
+ * JSON file or a directory of JSON files read in name order, where later files
+ * replace the entries of earlier ones. A background thread builds a new index
+ * when any file changes, and lookups keep using the previous one until the new
+ * one is complete. Only the first lookups wait, for the first load.
+ */
+public class DarkListProvider {
+    private static final Logger log = LoggerFactory.getLogger(DarkListProvider.class);
+
+    /**
+     * Seconds between checks of the darklist files.
+     */
+    public static long RELOAD_INTERVAL_SECONDS = 60;
+    /**
+     * Seconds that lookups wait for the first load before going on without darklist.
+     */
+    public static long LOAD_TIMEOUT_SECONDS = 60;
+
+    private static final Map<String, DarkListProvider> providers = new HashMap<>();
+
+    private final String path;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final CountDownLatch firstLoad = new CountDownLatch(1);
+    private volatile DarkListIndex index = DarkListIndex.EMPTY;
+    private volatile long version;
+    private volatile long loadMillis;
+    private String[] files;
+    private long[] stamps;
+
+    DarkListProvider(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the provider of the given darklist file or directory, starting to
+     * load it the first time.
+     */
+    public static synchronized DarkListProvider get(String path) {
+        DarkListProvider provider = providers.get(path);
+
+        if (provider == null) {
+            provider = new DarkListProvider(path);
+            providers.put(path, provider);
+
+            final DarkListProvider watched = provider;
+            FileWatcher.watch("the darklist", new Runnable() {
+                @Override
+                public void run() {
+                    watched.reloadIfChanged();
+                }
+            }, RELOAD_INTERVAL_SECONDS);
+        }
+
+        return provider;
+    }
+
+    /**
+     * Current index, empty if the darklist couldn't be read.
+     */
+    public DarkListIndex index() {
+        if (firstLoad.getCount() > 0) {
+            try {
+                if (!firstLoad.await(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("The darklist {} is still loading", path);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Number of indexes loaded so far, 0 until the first one.
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Milliseconds that the last load took.
+     */
+    public long loadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * Builds a new index if any darklist file changed since the last load.
+     *
+     * @return true if a new index was published
+     */
+    synchronized boolean reloadIfChanged() {
+        try {
+            String[] current = files();
+            long[] currentStamps = FileWatcher.stamps(current);
+            if (Arrays.equals(current, files) && Arrays.equals(currentStamps, stamps)) return false;
+
+            if (current.length == 0) {
+                // Reported once, it is retried when the files show up
+                if (files == null) log.error("The darklist {} couldn't be found", path);
+                files = current;
+                stamps = currentStamps;
+                return false;
+            }
+
+            long start = System.currentTimeMillis();
+            DarkListIndex.Builder builder = new DarkListIndex.Builder();
+            int skipped = 0;
+
+            try {
+                for (String file : current) {
+                    skipped += read(new File(file), builder);
+                }
+            } catch (IOException | RuntimeException ex) {
+                log.error("Couldn't read the darklist, keeping the previous one", ex);
+                return false;
+            }
+
+            DarkListIndex loaded = builder.build();
+            files = current;
+            stamps = currentStamps;
+            loadMillis = System.currentTimeMillis() - start;
+            version++;
+            index = loaded;
+
+            if (skipped > 0) log.warn("Skipped {} invalid entries of the darklist", skipped);
+            log.info("Loaded darklist version {} with {} entries and {} reputations in {} ms",
+                    version, loaded.size(), loaded.profiles(), loadMillis);
+            return true;
+        } finally {
+            firstLoad.countDown();
+        }
+    }
+
+    private String[] files() {
+        File file = new File(path);
+
+        if (file.isDirectory()) {
+            String[] names = file.list(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".json");
+                }
+            });
+
+            if (names == null) return new String[0];
+            Arrays.sort(names);
+
+            String[] files = new String[names.length];
+            for (int i = 0; i < names.length; i++) {
+                files[i] = new File(file, names[i]).getPath();
+            }
+
+            return files;
+        }
+
+        return file.isFile() ? new String[]{path} : new String[0];
+    }
+
+    /**
+     * Streams an array of {"ip": ..., "enrich_with": {...}} objects into the builder,
+     * so only one entry is held in memory at a time.
+     *
+     * @return the number of entries that were skipped
+     */
+    @SuppressWarnings("unchecked")
+    int read(File file, DarkListIndex.Builder builder) throws IOException {
+        int skipped = 0;
+
+        try (JsonParser parser = new JsonFactory(mapper).createParser(file)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("The darklist " + file + " is not an array");
+            }
+
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String ip = null;
+                Map<String, Object> data = null;
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+
+                    if (field.equals("ip") && value == JsonToken.VALUE_STRING) {
+                        ip = parser.getText();
+                    } else if (field.equals("enrich_with") && value == JsonToken.START_OBJECT) {
+                        data = mapper.readValue(parser, Map.class);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+
+                if (ip == null || data == null || !builder.add(ip, data)) skipped++;
+            }
+
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("The darklist " + file + " has an unexpected " + parser.getCurrentToken());
+            }
+        }
+
+        return skipped;
+    }
+}
@@ -0,0 +1,75 @@
+package net.redborder.samza.enrichments;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * View of a message that reads through to it but keeps its own writes apart, so
+ * enrichments of the same level can run at once on one message. The message
+ * must not change while the view is in use, and the writes are copied into it
+ * afterwards with applyTo.
+ */
+class DeltaMap extends AbstractMap<String, Object> {
+    private static final Object REMOVED = new Object();
+
+    private final Map<String, Object> base;
+    private final Map<String, Object> changes = new HashMap<>();
+
+    DeltaMap(Map<String, Object> base) {
+        this.base = base;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = changes.get(key);
+        if (value == null && !changes.containsKey(key)) return base.get(key);
+        return value == REMOVED ? null : value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Object value = changes.get(key);
+        if (value == null && !changes.containsKey(key)) return base.containsKey(key);
+        return value != REMOVED;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object previous = get(key);
+        changes.put(key, value);
+        return previous;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object previous = get(key);
+        if (key instanceof String) changes.put((String) key, REMOVED);
+        return previous;
+    }
+
+    /**
+     * Snapshot of the merged entries, enrichments barely iterate the message.
+     */
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> merged = new HashMap<>(base);
+        applyTo(merged);
+        return Collections.unmodifiableMap(merged).entrySet();
+    }
+
+    /**
+     * Writes the changes made through this view into the message.
+     */
+    void applyTo(Map<String, Object> message) {
+        for (Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() == REMOVED) {
+                message.remove(change.getKey());
+            } else {
+                message.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+}
@@ -1,29 +1,324 @@
 package net.redborder.samza.enrichments;
 
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+/**
+ * Runs the enrichments of a stream following a plan built from the fields that
+ * each one reads and writes. Enrichments whose input fields are all missing from
+ * a message are skipped. Enrichments are grouped in levels, where every
+ * enrichment depends only on enrichments of earlier levels, and an enrichment
+ * depends on an earlier configured one when either writes a field that the other
+ * reads or writes. Running the plan gives the same result as running the
+ * enrichments in their configured order.
+ *
+ * <p>With a parallelism above zero, the enrichments of a level run at once on a
+ * pool of worker threads shared by the container. Each one writes to its own view
+ * of the message, and the views are copied into the message when the whole level
+ * is done, so every message still leaves the manager fully enriched and in order.</p>
+ */
 public class EnrichManager {
+    private static final Logger log = LoggerFactory.getLogger(EnrichManager.class);
+    /**
+     * One of every this many messages is timed, timers are too expensive to update on every message.
+     */
+    private static final int TIMING_SAMPLE = 64;
+    /**
+     * Property with the number of threads that enrich the levels of a message in
+     * parallel, 0 to enrich them on the task thread.
+     */
+    public static final String PARALLELISM = "redborder.enrichments.parallelism";
+
+    private static ExecutorService workers;
+    private static int workerThreads;
+
     List<IEnrich> enrichments;
+    private final String stream;
+    private final MetricsRegistry metrics;
+    private Stage[] stages = new Stage[0];
+    private int[] levelStarts = new int[]{0};
+    private int messages;
+    private ExecutorService pool;
 
     public EnrichManager() {
-        enrichments = new ArrayList<>();
+        this(null, null);
+    }
+
+    /**
+     * Creates a manager that exports the time spent in each enrichment of the
+     * stream and the number of messages that skipped it.
+     */
+    public EnrichManager(String stream, MetricsRegistry metrics) {
+        this.enrichments = new ArrayList<>();
+        this.stream = stream;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Unmodifiable set of field names, for the inputs and outputs of enrichments.
+     */
+    public static Set<String> fields(String... names) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names)));
+    }
+
+    private static synchronized ExecutorService workers(int threads) {
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int count;
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "enrich-worker-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            workerThreads = threads;
+        } else if (threads != workerThreads) {
+            log.warn("The enrichment worker pool already has {} threads, ignoring the {} requested", workerThreads, threads);
+        }
+
+        return workers;
+    }
+
+    /**
+     * Enriches independent enrichments with the given number of threads, shared
+     * with the other tasks of the container. 0 runs them on the calling thread.
+     * The pool is sized by the first manager that asks for threads, later ones share
+     * it whatever number they ask for.
+     */
+    public void setParallelism(int threads) {
+        pool = threads > 0 ? workers(threads) : null;
     }
 
     public void addEnrichment(IEnrich enrich) {
         enrichments.add(enrich);
+        plan();
+    }
+
+    private void plan() {
+        int count = enrichments.size();
+        int[] levels = new int[count];
+        int maxLevel = -1;
+
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < i; j++) {
+                if (levels[j] >= levels[i] && dependsOn(enrichments.get(i), enrichments.get(j))) {
+                    levels[i] = levels[j] + 1;
+                }
+            }
+
+            maxLevel = Math.max(maxLevel, levels[i]);
+        }
+
+        Stage[] planned = new Stage[count];
+        int[] starts = new int[maxLevel + 2];
+        int next = 0;
+
+        for (int level = 0; level <= maxLevel; level++) {
+            starts[level] = next;
+
+            for (int i = 0; i < count; i++) {
+                if (levels[i] == level) planned[next++] = stage(enrichments.get(i));
+            }
+        }
+
+        starts[maxLevel + 1] = next;
+        stages = planned;
+        levelStarts = starts;
+    }
+
+    private Stage stage(IEnrich enrich) {
+        // Stages that were planned before keep their metrics
+        for (Stage stage : stages) {
+            if (stage.enrich == enrich) return stage;
+        }
+
+        Set<String> inputs = enrich.inputFields();
+        String name = enrich.getClass().getSimpleName();
+        Stage stage = new Stage(enrich, inputs == null ? null : inputs.toArray(new String[inputs.size()]));
+
+        if (metrics != null) {
+            String group = getClass().getName();
+            stage.timer = metrics.newTimer(group, stream + "-" + name + "-ns");
+            stage.skipped = metrics.newCounter(group, stream + "-" + name + "-skipped");
+        } else {
+            stage.timer = new Timer(name + "-ns");
+            stage.skipped = new Counter(name + "-skipped");
+        }
+
+        return stage;
+    }
+
+    // Unknown fields, given as null, conflict with everything
+    private static boolean dependsOn(IEnrich later, IEnrich earlier) {
+        Set<String> laterInputs = later.inputFields();
+        Set<String> laterOutputs = later.outputFields();
+        Set<String> earlierInputs = earlier.inputFields();
+        Set<String> earlierOutputs = earlier.outputFields();
+
+        return intersect(earlierOutputs, laterInputs)
+                || intersect(earlierInputs, laterOutputs)
+                || intersect(earlierOutputs, laterOutputs);
+    }
+
+    private static boolean intersect(Set<String> a, Set<String> b) {
+        if (a == null || b == null) return true;
+        return !Collections.disjoint(a, b);
+    }
+
+    /**
+     * Enrichments of every level of the plan, in the order they run.
+     */
+    List<List<IEnrich>> levels() {
+        List<List<IEnrich>> levels = new ArrayList<>();
+
+        for (int level = 0; level < levelStarts.length - 1; level++) {
+            List<IEnrich> enrichments = new ArrayList<>();
+            for (int i = levelStarts[level]; i < levelStarts[level + 1]; i++) {
+                enrichments.add(stages[i].enrich);
+            }
+
+            levels.add(enrichments);
+        }
+
+        return levels;
     }
 
     public Map<String, Object> enrich(Map<String, Object> message) {
-        Map<String, Object> enrichments = new HashMap<>();
-        enrichments.putAll(message);
+        boolean timed = messages++ % TIMING_SAMPLE == 0;
+
+        if (pool != null) {
+            enrichInParallel(message, timed);
+            return message;
+        }
+
+        for (Stage stage : stages) {
+            if (stage.appliesTo(message)) {
+                stage.run(message, timed);
+            } else {
+                stage.skipped.inc();
+            }
+        }
+
+        return message;
+    }
+
+    private void enrichInParallel(Map<String, Object> message, boolean timed) {
+        for (int level = 0; level < levelStarts.length - 1; level++) {
+            List<Stage> applied = new ArrayList<>(levelStarts[level + 1] - levelStarts[level]);
+
+            for (int i = levelStarts[level]; i < levelStarts[level + 1]; i++) {
+                if (stages[i].appliesTo(message)) {
+                    applied.add(stages[i]);
+                } else {
+                    stages[i].skipped.inc();
+                }
+            }
+
+            if (applied.size() == 1) {
+                applied.get(0).run(message, timed);
+            } else if (applied.size() > 1) {
+                runAtOnce(applied, message, timed);
+            }
+        }
+    }
+
+    private void runAtOnce(List<Stage> applied, Map<String, Object> message, final boolean timed) {
+        int count = applied.size();
+        DeltaMap[] deltas = new DeltaMap[count];
+        List<Future<?>> futures = new ArrayList<>(count - 1);
+
+        for (int i = 0; i < count; i++) {
+            deltas[i] = new DeltaMap(message);
+        }
+
+        // The task thread runs the first one instead of waiting idle
+        for (int i = 1; i < count; i++) {
+            final Stage stage = applied.get(i);
+            final DeltaMap delta = deltas[i];
+
+            futures.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    stage.run(delta, timed);
+                }
+            }));
+        }
+
+        RuntimeException failure = null;
+        try {
+            applied.get(0).run(deltas[0], timed);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) failure = new RuntimeException(e);
+            }
+        }
+
+        if (failure != null) throw failure;
 
-        for (IEnrich enrich : this.enrichments) {
-            enrichments.putAll(enrich.enrich(message));
+        for (DeltaMap delta : deltas) {
+            delta.applyTo(message);
         }
+    }
+
+    private static final class Stage {
+        final IEnrich enrich;
+        final String[] inputs;
+        Timer timer;
+        Counter skipped;
 
-        return enrichments;
+        Stage(IEnrich enrich, String[] inputs) {
+            this.enrich = enrich;
+            this.inputs = inputs;
+        }
+
+        void run(Map<String, Object> message, boolean timed) {
+            if (timed) {
+                long start = System.nanoTime();
+                enrich.enrich(message);
+                timer.update(System.nanoTime() - start);
+            } else {
+                enrich.enrich(message);
+            }
+        }
+
+        boolean appliesTo(Map<String, Object> message) {
+            if (inputs == null || inputs.length == 0) return true;
+
+            for (String input : inputs) {
+                if (message.get(input) != null) return true;
+            }
+
+            return false;
+        }
     }
 }
@@ -0,0 +1,60 @@
+package net.redborder.samza.enrichments;
+
+import net.redborder.samza.util.LruCache;
+import org.apache.samza.metrics.Counter;
+
+/**
+ * Bounded LRU cache of GeoIP results keyed by the numeric address, an int for
+ * IPv4 and two longs for IPv6. Not thread safe, every task has its own.
+ */
+public class GeoIpCache {
+    private final LruCache<GeoIpInfo> ipv4;
+    private final LruCache<GeoIpInfo> ipv6;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public GeoIpCache(int capacity, Counter hits, Counter misses, Counter evictions) {
+        this.ipv4 = new LruCache<>(capacity);
+        this.ipv6 = new LruCache<>(capacity);
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public GeoIpInfo getIPv4(int address) {
+        return count(ipv4.get(0L, address));
+    }
+
+    public void putIPv4(int address, GeoIpInfo info) {
+        if (ipv4.put(0L, address, info)) evictions.inc();
+    }
+
+    public GeoIpInfo getIPv6(long high, long low) {
+        return count(ipv6.get(high, low));
+    }
+
+    public void putIPv6(long high, long low, GeoIpInfo info) {
+        if (ipv6.put(high, low, info)) evictions.inc();
+    }
+
+    public int size() {
+        return ipv4.size() + ipv6.size();
+    }
+
+    public void clear() {
+        ipv4.clear();
+        ipv6.clear();
+    }
+
+    private GeoIpInfo count(GeoIpInfo info) {
+        if (info != null) {
+            hits.inc();
+        } else {
+            misses.inc();
+        }
+
+        return info;
+    }
+}
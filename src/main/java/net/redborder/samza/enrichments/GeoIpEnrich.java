@@ -1,22 +1,26 @@
 package net.redborder.samza.enrichments;
 
-import com.maxmind.geoip.Location;
-import com.maxmind.geoip.LookupService;
+import net.redborder.samza.util.IpAddress;
 import net.redborder.samza.util.PostgresqlManager;
+import org.apache.samza.config.Config;
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.task.TaskContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.util.HashMap;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.Set;
 
 import static net.redborder.samza.util.constants.Dimension.*;
 
 public class GeoIpEnrich implements IEnrich {
     private static final Logger log = LoggerFactory.getLogger(GeoIpEnrich.class);
+    private static final Set<String> INPUTS = EnrichManager.fields(SRC_IP, DST_IP);
+    private static final Set<String> OUTPUTS = EnrichManager.fields(SRC_COUNTRY_CODE, DST_COUNTRY_CODE, SRC_AS_NAME, DST_AS_NAME);
 
     /**
      * Path to city data base.
@@ -35,146 +39,138 @@ public class GeoIpEnrich implements IEnrich {
      */
     public static String ASN_V6_DB_PATH = "/opt/rb/share/GeoIP/asnv6.dat";
     /**
-     * Pattern to to make the comparison with ips v4.
+     * Property with the number of IPv4 and of IPv6 addresses whose result is cached.
      */
-    public static Pattern VALID_IPV4_PATTERN = null;
+    public static final String CACHE_SIZE = "redborder.enrichments.geo_ip.cache.size";
+    public static final int DEFAULT_CACHE_SIZE = 16384;
     /**
-     * Pattern to to make the comparison with ips v6.
+     * Data bases shared with the rest of the tasks of the container.
      */
-    public static Pattern VALID_IPV6_PATTERN = null;
+    GeoIpProvider provider;
     /**
-     * Regular expresion to make the comparison with ipv4 format.
+     * Data bases the cached results came from.
      */
-    private static final String ipv4Pattern = "(([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\.){3}([01]?\\d\\d?|2[0-4]\\d|25[0-5])";
+    GeoIpProvider.Databases cached;
     /**
-     * Regular expresion to make the comparison with ipv6 format.
+     * Results of the most recently used addresses. Created by init, or with the
+     * default size by the first lookup if the enrichment was not initialized.
      */
-    private static final String ipv6Pattern = "([0-9a-f]{1,4}:){7}([0-9a-f]){1,4}";
-
-    /**
-     * Reference on memory cache to city data base.
-     */
-    LookupService city;
-    /**
-     * Reference on memory cache to city v6 data base.
-     */
-    LookupService city6;
+    GeoIpCache cache;
     /**
-     * Reference on memory cache to asn data base.
+     * Address being looked up, reused between lookups.
      */
-    LookupService asn;
-    /**
-     * Reference on memory cache to asn v6 data base.
-     */
-    LookupService asn6;
+    private final byte[] ipv6 = new byte[16];
 
     public GeoIpEnrich() {
-        try {
-            city = new LookupService(CITY_DB_PATH, LookupService.GEOIP_MEMORY_CACHE);
-            city6 = new LookupService(CITY_V6_DB_PATH, LookupService.GEOIP_MEMORY_CACHE);
-            asn = new LookupService(ASN_DB_PATH, LookupService.GEOIP_MEMORY_CACHE);
-            asn6 = new LookupService(ASN_V6_DB_PATH, LookupService.GEOIP_MEMORY_CACHE);
-            VALID_IPV4_PATTERN = Pattern.compile(ipv4Pattern, Pattern.CASE_INSENSITIVE);
-            VALID_IPV6_PATTERN = Pattern.compile(ipv6Pattern, Pattern.CASE_INSENSITIVE);
-        } catch (IOException ex) {
-            log.error(ex.toString(), ex);
-        } catch (PatternSyntaxException e) {
-            log.error("Unable to compile IP check patterns");
-        }
+        provider = GeoIpProvider.get(CITY_DB_PATH, CITY_V6_DB_PATH, ASN_DB_PATH, ASN_V6_DB_PATH);
     }
 
     /**
-     * <p>Query if there is a country code for a given IP.</p>
+     * <p>Query the country code and the asn name of an IP. The address is parsed
+     * once and both data bases are queried with its numeric value.</p>
      *
      * @param ip This is the address to query the data base.
-     * @return The country code, example: US, ES, FR.
+     * @return The country code and asn name, empty if the address is not valid.
      */
-    private String getCountryCode(String ip) {
-        Matcher match = VALID_IPV4_PATTERN.matcher(ip);
-        String countryCode = null;
-        Location location;
-
-        if (match.matches()) {
-            location = city.getLocation(ip);
-        } else {
-            location = city6.getLocationV6(ip);
+    public GeoIpInfo lookup(String ip) {
+        GeoIpProvider.Databases databases = provider.databases();
+        if (databases == null) return GeoIpInfo.EMPTY;
+
+        if (cache == null) {
+            cache = new GeoIpCache(DEFAULT_CACHE_SIZE, new Counter("hits"), new Counter("misses"), new Counter("evictions"));
         }
 
-        if (location != null) {
-            countryCode = location.countryCode;
+        // Results of replaced data bases are no longer valid
+        if (databases != cached) {
+            cache.clear();
+            cached = databases;
         }
 
-        return countryCode;
-    }
+        long ipv4 = IpAddress.parseIPv4(ip);
+        if (ipv4 >= 0) {
+            GeoIpInfo info = cache.getIPv4((int) ipv4);
 
-    /**
-     * <p>Query if there is a asn for a given IP.</p>
-     *
-     * @param ip This is the address to query the data base.
-     * @return The asn name.
-     */
-    private String getAsnName(String ip) {
-        Matcher match = VALID_IPV4_PATTERN.matcher(ip);
-        String asnName = null;
-        String asnInfo = null;
-
-        if (match.matches()) {
-            asnInfo = asn.getOrg(ip);
-        } else {
-            asnInfo = asn6.getOrgV6(ip);
-        }
+            if (info == null) {
+                info = databases.lookupIPv4(ipv4);
+                cache.putIPv4((int) ipv4, info);
+            }
 
-        if (asnInfo != null) {
-            String[] asn = asnInfo.split(" ", 2);
+            return info;
+        }
 
-            if (asn.length > 1) {
-                if (asn[1] != null) asnName = asn[1];
-            } else {
-                if (asn[0] != null) asnName = asn[0];
+        if (IpAddress.parseIPv6(ip, ipv6)) {
+            long high = toLong(ipv6, 0);
+            long low = toLong(ipv6, 8);
+            GeoIpInfo info = cache.getIPv6(high, low);
+
+            if (info == null) {
+                try {
+                    InetAddress address = Inet6Address.getByAddress(null, ipv6, -1);
+                    info = databases.lookupIPv6(address);
+                } catch (UnknownHostException e) {
+                    // Not possible with a 16 bytes address
+                    info = GeoIpInfo.EMPTY;
+                }
+
+                cache.putIPv6(high, low, info);
             }
+
+            return info;
         }
-        return asnName;
+
+        return GeoIpInfo.EMPTY;
     }
 
-    @Override
-    public Map<String, Object> enrich(Map<String, Object> message) {
-        Map<String, Object> geoIPMap = new HashMap<>();
-        geoIPMap.putAll(message);
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xff);
+        }
+
+        return value;
+    }
 
+    @Override
+    public void enrich(Map<String, Object> message) {
         String src = (String) message.get(SRC_IP);
         String dst = (String) message.get(DST_IP);
 
         if (src != null) {
-            String country_code = null;
-            String asn_name = null;
-
-            if (VALID_IPV4_PATTERN != null) {
-                country_code = getCountryCode(src);
-                asn_name = getAsnName(src);
-            }
-
-            if (country_code != null) geoIPMap.put(SRC_COUNTRY_CODE, country_code);
-            if (asn_name != null) geoIPMap.put(SRC_AS_NAME, asn_name);
+            GeoIpInfo info = lookup(src);
+            if (info.getCountryCode() != null) message.put(SRC_COUNTRY_CODE, info.getCountryCode());
+            if (info.getAsName() != null) message.put(SRC_AS_NAME, info.getAsName());
         }
 
         if (dst != null) {
-            String country_code = null;
-            String asn_name = null;
-
-            if (VALID_IPV4_PATTERN != null) {
-                country_code = getCountryCode(dst);
-                asn_name = getAsnName(dst);
-            }
-
-            if (country_code != null) geoIPMap.put(DST_COUNTRY_CODE, country_code);
-            if (asn_name != null) geoIPMap.put(DST_AS_NAME, asn_name);
+            GeoIpInfo info = lookup(dst);
+            if (info.getCountryCode() != null) message.put(DST_COUNTRY_CODE, info.getCountryCode());
+            if (info.getAsName() != null) message.put(DST_AS_NAME, info.getAsName());
         }
-
-        return geoIPMap;
     }
 
     @Override
     public void setPostgresqlManager(PostgresqlManager postgresqlManager) {
         //Nothing
     }
+
+    @Override
+    public void init(Config config, TaskContext context) {
+        MetricsRegistry metrics = context.getMetricsRegistry();
+        String group = getClass().getName();
+
+        cache = new GeoIpCache(config.getInt(CACHE_SIZE, DEFAULT_CACHE_SIZE),
+                metrics.newCounter(group, "cache-hits"),
+                metrics.newCounter(group, "cache-misses"),
+                metrics.newCounter(group, "cache-evictions"));
+    }
+
+    @Override
+    public Set<String> inputFields() {
+        return INPUTS;
+    }
+
+    @Override
+    public Set<String> outputFields() {
+        return OUTPUTS;
+    }
 }
@@ -0,0 +1,45 @@
+package net.redborder.samza.enrichments;
+
+/**
+ * Country code and AS name of an IP address, either of them may be null.
+ */
+public final class GeoIpInfo {
+    public static final GeoIpInfo EMPTY = new GeoIpInfo(null, null);
+
+    private final String countryCode;
+    private final String asName;
+
+    public GeoIpInfo(String countryCode, String asName) {
+        this.countryCode = countryCode;
+        this.asName = asName;
+    }
+
+    public String getCountryCode() {
+        return countryCode;
+    }
+
+    public String getAsName() {
+        return asName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GeoIpInfo)) return false;
+
+        GeoIpInfo other = (GeoIpInfo) o;
+        return (countryCode == null ? other.countryCode == null : countryCode.equals(other.countryCode)) &&
+                (asName == null ? other.asName == null : asName.equals(other.asName));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = countryCode == null ? 0 : countryCode.hashCode();
+        return 31 * hash + (asName == null ? 0 : asName.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "GeoIpInfo{countryCode=" + countryCode + ", asName=" + asName + "}";
+    }
+}
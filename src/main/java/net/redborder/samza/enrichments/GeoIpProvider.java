@@ -0,0 +1,163 @@
+package net.redborder.samza.enrichments;
+
+import com.maxmind.geoip.Location;
+import com.maxmind.geoip.LookupService;
+import net.redborder.samza.util.FileWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GeoIP databases shared by every task of the container. They are loaded once per
+ * set of files, and a background thread loads them again when any of the files
+ * changes on disk. Lookups keep using the previous databases until the new ones
+ * are completely loaded, and then switch to them at once.
+ */
+public class GeoIpProvider {
+    private static final Logger log = LoggerFactory.getLogger(GeoIpProvider.class);
+
+    /**
+     * Seconds between checks of the database files.
+     */
+    public static long RELOAD_INTERVAL_SECONDS = 60;
+
+    private static final Map<String, GeoIpProvider> providers = new HashMap<>();
+
+    private final String[] paths;
+    private volatile Databases databases;
+    private Databases retired;
+
+    GeoIpProvider(String... paths) {
+        this.paths = paths;
+        this.databases = load();
+    }
+
+    /**
+     * Returns the provider of the given city, city v6, asn and asn v6 files,
+     * creating it the first time.
+     */
+    public static synchronized GeoIpProvider get(String city, String city6, String asn, String asn6) {
+        String key = city + "|" + city6 + "|" + asn + "|" + asn6;
+        GeoIpProvider provider = providers.get(key);
+
+        if (provider == null) {
+            provider = new GeoIpProvider(city, city6, asn, asn6);
+            providers.put(key, provider);
+
+            final GeoIpProvider watched = provider;
+            FileWatcher.watch("the GeoIP databases", new Runnable() {
+                @Override
+                public void run() {
+                    watched.reloadIfChanged();
+                }
+            }, RELOAD_INTERVAL_SECONDS);
+        }
+
+        return provider;
+    }
+
+    /**
+     * Current databases, or null if they couldn't be loaded yet.
+     */
+    public Databases databases() {
+        return databases;
+    }
+
+    /**
+     * Loads the databases again if any of their files changed since they were loaded.
+     *
+     * @return true if new databases were loaded
+     */
+    synchronized boolean reloadIfChanged() {
+        // Databases replaced on the previous check are no longer in use by now
+        if (retired != null) {
+            retired.close();
+            retired = null;
+        }
+
+        Databases current = databases;
+        if (current != null && Arrays.equals(current.stamps, FileWatcher.stamps(paths))) return false;
+
+        Databases loaded = load();
+        if (loaded == null) return false;
+
+        databases = loaded;
+        retired = current;
+        log.info("Loaded new GeoIP databases {}", Arrays.toString(paths));
+        return true;
+    }
+
+    private Databases load() {
+        long[] stamps = FileWatcher.stamps(paths);
+        LookupService[] services = new LookupService[paths.length];
+
+        try {
+            for (int i = 0; i < paths.length; i++) {
+                services[i] = new LookupService(paths[i], LookupService.GEOIP_MEMORY_CACHE);
+            }
+
+            return new Databases(services[0], services[1], services[2], services[3], stamps);
+        } catch (IOException ex) {
+            log.error(ex.toString(), ex);
+
+            for (LookupService service : services) {
+                if (service != null) service.close();
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * One loaded set of databases, never modified once loaded.
+     */
+    public static final class Databases {
+        private final LookupService city;
+        private final LookupService city6;
+        private final LookupService asn;
+        private final LookupService asn6;
+        private final long[] stamps;
+
+        Databases(LookupService city, LookupService city6, LookupService asn, LookupService asn6, long[] stamps) {
+            this.city = city;
+            this.city6 = city6;
+            this.asn = asn;
+            this.asn6 = asn6;
+            this.stamps = stamps;
+        }
+
+        public GeoIpInfo lookupIPv4(long address) {
+            return info(city.getLocation(address), asn.getOrg(address));
+        }
+
+        public GeoIpInfo lookupIPv6(InetAddress address) {
+            return info(city6.getLocationV6(address), asn6.getOrgV6(address));
+        }
+
+        private static GeoIpInfo info(Location location, String asnInfo) {
+            String countryCode = location == null ? null : location.countryCode;
+            String asnName = null;
+
+            if (asnInfo != null) {
+                // The asn info is "AS<number> <name>", keep the name
+                int space = asnInfo.indexOf(' ');
+                asnName = space >= 0 ? asnInfo.substring(space + 1) : asnInfo;
+            }
+
+            if (countryCode == null && asnName == null) return GeoIpInfo.EMPTY;
+            return new GeoIpInfo(countryCode, asnName);
+        }
+
+        void close() {
+            city.close();
+            city6.close();
+            asn.close();
+            asn6.close();
+        }
+    }
+}
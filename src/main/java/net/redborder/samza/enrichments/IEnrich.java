@@ -1,10 +1,36 @@
 package net.redborder.samza.enrichments;
 
 import net.redborder.samza.util.PostgresqlManager;
+import org.apache.samza.config.Config;
+import org.apache.samza.task.TaskContext;
 
 import java.util.Map;
+import java.util.Set;
 
 public interface IEnrich {
-    Map<String, Object> enrich(Map<String, Object> message);
+    /**
+     * Writes the fields contributed by this enrichment straight into the message.
+     * The message is owned by the calling processor, so implementations must not copy it.
+     */
+    void enrich(Map<String, Object> message);
     void setPostgresqlManager(PostgresqlManager postgresqlManager);
+
+    /**
+     * Called once after the enrichment is created, with the config and context of the task that owns it.
+     */
+    void init(Config config, TaskContext context);
+
+    /**
+     * Fields read by this enrichment. It is skipped for messages that have none of
+     * them. Null means unknown: the enrichment always runs, after every enrichment
+     * configured before it and before every one configured after it. An empty set also
+     * always runs but tells that no field is read, so enrichments that must always run
+     * and read fields return null.
+     */
+    Set<String> inputFields();
+
+    /**
+     * Fields this enrichment may write. Null means unknown.
+     */
+    Set<String> outputFields();
 }
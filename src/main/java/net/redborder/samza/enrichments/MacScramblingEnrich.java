@@ -1,23 +1,44 @@
 package net.redborder.samza.enrichments;
 
+import net.redborder.samza.util.LruCache;
 import net.redborder.samza.util.MacScramble;
 import net.redborder.samza.util.PostgresqlManager;
 import net.redborder.samza.util.constants.Dimension;
+import org.apache.samza.config.Config;
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.task.TaskContext;
 import org.bouncycastle.util.encoders.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.GeneralSecurityException;
 import java.util.Map;
+import java.util.Set;
 
 public class MacScramblingEnrich implements IEnrich {
     private static final Logger log = LoggerFactory.getLogger(MacScramblingEnrich.class);
     private final static char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+    // It also reads the service provider, but does nothing without a MAC
+    private static final Set<String> INPUTS = EnrichManager.fields(Dimension.CLIENT_MAC);
+    private static final Set<String> OUTPUTS = EnrichManager.fields(Dimension.CLIENT_MAC);
+    /**
+     * Property with the number of scrambled MACs that are cached.
+     */
+    public static final String CACHE_SIZE = "redborder.enrichments.mac_hashing.cache.size";
+    public static final int DEFAULT_CACHE_SIZE = 16384;
     private PostgresqlManager postgresqlManager;
-
+    /**
+     * Scrambled MACs keyed by the scramble that produced them and the 48 bits MAC.
+     * A rotated salt gets a new scramble, so its old results are never found again.
+     */
+    LruCache<String> cache = new LruCache<>(DEFAULT_CACHE_SIZE);
+    Counter hits = new Counter("hits");
+    Counter misses = new Counter("misses");
+    Counter evictions = new Counter("evictions");
 
     @Override
-    public Map<String, Object> enrich(Map<String, Object> message) {
+    public void enrich(Map<String, Object> message) {
         Map<String, MacScramble> scrambles = postgresqlManager.getScrambles();
 
         String mac = (String) message.get(Dimension.CLIENT_MAC);
@@ -30,15 +51,29 @@ public class MacScramblingEnrich implements IEnrich {
 
             log.debug("SPuuid: {}  Scramble: {}", spUUID, scramble);
             if (scramble != null && mac != null) {
-                scrambleMac = scramble.scrambleMac(Hex.decode(mac.replace(":", "")));
-                message.put(Dimension.CLIENT_MAC, toMac(scrambleMac, ":"));
+                long address = parseMac(mac);
+
+                if (address < 0) {
+                    scrambleMac = scramble.scrambleMac(Hex.decode(mac.replace(":", "")));
+                    message.put(Dimension.CLIENT_MAC, toMac(scrambleMac, ":"));
+                    return;
+                }
+
+                String scrambled = cache.get(scramble.id(), address);
+
+                if (scrambled == null) {
+                    misses.inc();
+                    scrambled = toMac(scramble.scrambleMac(toBytes(address)), ":");
+                    if (cache.put(scramble.id(), address, scrambled)) evictions.inc();
+                } else {
+                    hits.inc();
+                }
+
+                message.put(Dimension.CLIENT_MAC, scrambled);
             }
         } catch (GeneralSecurityException e) {
             e.printStackTrace();
         }
-
-
-        return message;
     }
 
 
@@ -47,6 +82,54 @@ public class MacScramblingEnrich implements IEnrich {
         this.postgresqlManager = postgresqlManager;
     }
 
+    @Override
+    public void init(Config config, TaskContext context) {
+        MetricsRegistry metrics = context.getMetricsRegistry();
+        String group = getClass().getName();
+
+        cache = new LruCache<>(config.getInt(CACHE_SIZE, DEFAULT_CACHE_SIZE));
+        hits = metrics.newCounter(group, "cache-hits");
+        misses = metrics.newCounter(group, "cache-misses");
+        evictions = metrics.newCounter(group, "cache-evictions");
+    }
+
+    /**
+     * Parses a MAC of 12 hex digits, with or without colons, into its 48 bits.
+     *
+     * @return the MAC value or -1 if it has any other format
+     */
+    public static long parseMac(String mac) {
+        int length = mac.length();
+        boolean colons = length == 17;
+        if (!colons && length != 12) return -1;
+
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = mac.charAt(i);
+
+            if (colons && i % 3 == 2) {
+                if (c != ':') return -1;
+                continue;
+            }
+
+            int digit = Character.digit(c, 16);
+            if (digit < 0) return -1;
+            value = (value << 4) | digit;
+        }
+
+        return value;
+    }
+
+    private static byte[] toBytes(long mac) {
+        byte[] bytes = new byte[6];
+        for (int i = 5; i >= 0; i--) {
+            bytes[i] = (byte) mac;
+            mac >>>= 8;
+        }
+
+        return bytes;
+    }
+
     public static String toMac(final byte[] val, final String sep) {
         final StringBuilder sb = new StringBuilder(32);
         for (int a = 0; a < val.length; a++) {
@@ -59,4 +142,14 @@ public class MacScramblingEnrich implements IEnrich {
 
         return sb.toString();
     }
+
+    @Override
+    public Set<String> inputFields() {
+        return INPUTS;
+    }
+
+    @Override
+    public Set<String> outputFields() {
+        return OUTPUTS;
+    }
 }
@@ -1,74 +1,57 @@
 package net.redborder.samza.enrichments;
 
 import net.redborder.samza.util.PostgresqlManager;
+import org.apache.samza.config.Config;
+import org.apache.samza.task.TaskContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static net.redborder.samza.util.constants.Dimension.CLIENT_MAC;
 import static net.redborder.samza.util.constants.Dimension.CLIENT_MAC_VENDOR;
 
 public class MacVendorEnrich implements IEnrich {
     private static final Logger log = LoggerFactory.getLogger(MacVendorEnrich.class);
+    private static final Set<String> INPUTS = EnrichManager.fields(CLIENT_MAC);
+    private static final Set<String> OUTPUTS = EnrichManager.fields(CLIENT_MAC_VENDOR);
 
     public static String ouiFilePath = "/opt/rb/etc/objects/mac_vendors";
-    public Map<String, String> ouiMap;
+    public MacVendorProvider provider;
 
     public MacVendorEnrich() {
-        InputStream in = null;
-        ouiMap = new HashMap<>();
-
-        try {
-            in = new FileInputStream(ouiFilePath);
-        } catch (FileNotFoundException ex) {
-            log.error("The MacVendor file couldn't be found", ex);
-        }
-
-        if (in != null) {
-            InputStreamReader isr = new InputStreamReader(in);
-            BufferedReader br = new BufferedReader(isr);
-
-            try {
-                String line = br.readLine();
-
-                while (line != null) {
-                    String[] tokens = line.split("\\|");
-                    ouiMap.put(tokens[0], tokens[1]);
-                    line = br.readLine();
-                }
-            } catch (IOException ex) {
-                log.error("Couldn't process MacVendor file", ex);
-            }
-        }
-    }
-
-    private String buildOui(Object object) {
-        String mac = object.toString();
-        mac = mac.trim().replace("-", "").replace(":", "");
-        return mac.substring(0, 6).toUpperCase();
+        provider = MacVendorProvider.get(ouiFilePath);
     }
 
     @Override
-    public Map<String, Object> enrich(Map<String, Object> message) {
-        Map<String, Object> vendorMap = new HashMap<>();
-        vendorMap.putAll(message);
-
+    public void enrich(Map<String, Object> message) {
         String clientMac = (String) message.get(CLIENT_MAC);
 
         if (clientMac != null) {
-            String oui = buildOui(clientMac);
-            if (ouiMap.get(oui) != null)
-                vendorMap.put(CLIENT_MAC_VENDOR, ouiMap.get(oui));
+            String vendor = provider.index().vendor(clientMac);
+            if (vendor != null)
+                message.put(CLIENT_MAC_VENDOR, vendor);
         }
-
-        return vendorMap;
     }
 
     @Override
     public void setPostgresqlManager(PostgresqlManager postgresqlManager) {
         //Nothing
     }
+
+    @Override
+    public void init(Config config, TaskContext context) {
+        //Nothing
+    }
+
+    @Override
+    public Set<String> inputFields() {
+        return INPUTS;
+    }
+
+    @Override
+    public Set<String> outputFields() {
+        return OUTPUTS;
+    }
 }
@@ -0,0 +1,188 @@
+package net.redborder.samza.enrichments;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Vendors of MAC address prefixes. It holds the 24 bit OUIs and the 28 bit (MA-M)
+ * and 36 bit (MA-S) blocks of the vendors file in an open addressing table keyed
+ * by the numeric prefix, and looks MACs up by their longest known prefix. The
+ * index is never modified once loaded.
+ */
+public class MacVendorIndex {
+    private static final Logger log = LoggerFactory.getLogger(MacVendorIndex.class);
+
+    public static final MacVendorIndex EMPTY = new MacVendorIndex(new long[0], new String[0], 0);
+
+    private static final int[] PREFIX_BITS = new int[]{36, 28, 24};
+
+    // Keys are the prefix shifted left six bits plus its length, so they are never 0
+    private final long[] keys;
+    private final String[] vendors;
+    private final int mask;
+    private final int size;
+    private final boolean hasBlocks;
+
+    private MacVendorIndex(long[] keys, String[] vendors, int size) {
+        this.keys = keys;
+        this.vendors = vendors;
+        this.mask = keys.length - 1;
+        this.size = size;
+
+        boolean hasBlocks = false;
+        for (long key : keys) {
+            if (key != 0 && (key & 0x3f) != 24) hasBlocks = true;
+        }
+        this.hasBlocks = hasBlocks;
+    }
+
+    /**
+     * Reads lines like 001CB3|Apple, where the prefix has 6, 7 or 9 hex digits.
+     * Separators in the prefix are ignored and lines that can't be parsed are skipped.
+     */
+    public static MacVendorIndex load(Reader reader) throws IOException {
+        BufferedReader br = new BufferedReader(reader);
+        Map<Long, String> prefixes = new HashMap<>();
+        Map<String, String> names = new HashMap<>();
+        int skipped = 0;
+
+        String line;
+        while ((line = br.readLine()) != null) {
+            int separator = line.indexOf('|');
+            long key = separator > 0 ? prefixKey(line, separator) : 0;
+
+            if (key == 0) {
+                if (!line.trim().isEmpty()) skipped++;
+                continue;
+            }
+
+            // Every vendor name is kept once no matter how many prefixes it has
+            String vendor = line.substring(separator + 1);
+            String interned = names.get(vendor);
+            if (interned == null) {
+                names.put(vendor, vendor);
+                interned = vendor;
+            }
+
+            prefixes.put(key, interned);
+        }
+
+        if (skipped > 0) log.warn("Skipped {} invalid lines of the MacVendor file", skipped);
+        return build(prefixes);
+    }
+
+    static MacVendorIndex build(Map<Long, String> prefixes) {
+        int capacity = Integer.highestOneBit(Math.max(prefixes.size(), 1) * 2 - 1) << 1;
+        long[] keys = new long[capacity];
+        String[] vendors = new String[capacity];
+
+        for (Map.Entry<Long, String> entry : prefixes.entrySet()) {
+            long key = entry.getKey();
+            int slot = slot(key, capacity - 1);
+            while (keys[slot] != 0) slot = (slot + 1) & (capacity - 1);
+            keys[slot] = key;
+            vendors[slot] = entry.getValue();
+        }
+
+        return new MacVendorIndex(keys, vendors, prefixes.size());
+    }
+
+    private static long prefixKey(String line, int end) {
+        long prefix = 0;
+        int digits = 0;
+
+        for (int i = 0; i < end; i++) {
+            char c = line.charAt(i);
+            int value = hex(c);
+
+            if (value >= 0) {
+                if (++digits > 9) return 0;
+                prefix = (prefix << 4) | value;
+            } else if (!isSeparator(c)) {
+                return 0;
+            }
+        }
+
+        if (digits != 6 && digits != 7 && digits != 9) return 0;
+        return key(prefix, digits * 4);
+    }
+
+    private static long key(long prefix, int bits) {
+        return (prefix << 6) | bits;
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Vendor of the longest known prefix of the MAC, or null if there is none. The
+     * MAC may use colons, dashes or dots as separators and either case.
+     */
+    public String vendor(String mac) {
+        if (size == 0) return null;
+
+        // Only the first nine digits can be part of a prefix
+        long digitsValue = 0;
+        int digits = 0;
+        int length = mac.length();
+        int start = 0;
+        int end = length;
+
+        while (start < end && mac.charAt(start) <= ' ') start++;
+        while (end > start && mac.charAt(end - 1) <= ' ') end--;
+
+        for (int i = start; i < end && digits < 9; i++) {
+            char c = mac.charAt(i);
+            int value = hex(c);
+
+            if (value >= 0) {
+                digitsValue = (digitsValue << 4) | value;
+                digits++;
+            } else if (!isSeparator(c)) {
+                break;
+            }
+        }
+
+        if (digits < 6) return null;
+
+        for (int bits : PREFIX_BITS) {
+            if (bits > digits * 4 || (bits != 24 && !hasBlocks)) continue;
+
+            String vendor = get(key(digitsValue >>> (digits * 4 - bits), bits));
+            if (vendor != null) return vendor;
+        }
+
+        return null;
+    }
+
+    private String get(long key) {
+        for (int slot = slot(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return vendors[slot];
+        }
+
+        return null;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ':' || c == '-' || c == '.';
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+}
@@ -0,0 +1,114 @@
+package net.redborder.samza.enrichments;
+
+import net.redborder.samza.util.FileWatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MAC vendor index shared by every task of the container. The vendors file is
+ * read in the background, so creating an enrichment does not wait for it, and
+ * it is read again when its modification time or length changes. The first
+ * lookups wait for the first load to finish.
+ */
+public class MacVendorProvider {
+    private static final Logger log = LoggerFactory.getLogger(MacVendorProvider.class);
+
+    /**
+     * Seconds between checks of the vendors file.
+     */
+    public static long RELOAD_INTERVAL_SECONDS = 60;
+    /**
+     * Seconds that lookups wait for the first load before going on without vendors.
+     */
+    public static long LOAD_TIMEOUT_SECONDS = 60;
+
+    private static final Map<String, MacVendorProvider> providers = new HashMap<>();
+
+    private final String path;
+    private final CountDownLatch firstLoad = new CountDownLatch(1);
+    private volatile MacVendorIndex index = MacVendorIndex.EMPTY;
+    private long[] stamps;
+
+    MacVendorProvider(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the provider of the given vendors file, starting to load it the first time.
+     */
+    public static synchronized MacVendorProvider get(String path) {
+        MacVendorProvider provider = providers.get(path);
+
+        if (provider == null) {
+            provider = new MacVendorProvider(path);
+            providers.put(path, provider);
+
+            final MacVendorProvider watched = provider;
+            FileWatcher.watch("the MacVendor file", new Runnable() {
+                @Override
+                public void run() {
+                    watched.reloadIfChanged();
+                }
+            }, RELOAD_INTERVAL_SECONDS);
+        }
+
+        return provider;
+    }
+
+    /**
+     * Current index, empty if the file couldn't be read.
+     */
+    public MacVendorIndex index() {
+        if (firstLoad.getCount() > 0) {
+            try {
+                if (!firstLoad.await(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("The MacVendor file {} is still loading", path);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Reads the file again if it changed since it was read.
+     *
+     * @return true if a new index was loaded
+     */
+    synchronized boolean reloadIfChanged() {
+        try {
+            long[] current = FileWatcher.stamps(path);
+            if (Arrays.equals(current, stamps)) return false;
+
+            try (Reader reader = new InputStreamReader(new FileInputStream(path))) {
+                index = MacVendorIndex.load(reader);
+                stamps = current;
+                log.info("Loaded {} MAC vendor prefixes from {}", index.size(), path);
+                return true;
+            } catch (FileNotFoundException ex) {
+                // Reported once, it is retried when the file shows up
+                if (stamps == null) log.error("The MacVendor file couldn't be found", ex);
+                stamps = current;
+                return false;
+            } catch (IOException ex) {
+                log.error("Couldn't process MacVendor file", ex);
+                return false;
+            }
+        } finally {
+            firstLoad.countDown();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package net.redborder.samza.functions;
 
+import net.redborder.samza.util.FlowRecord;
 import net.redborder.samza.util.constants.Dimension;
 
 import java.util.Map;
@@ -7,6 +8,10 @@ import java.util.Map;
 public class CalculateDurationFunction {
 
     public static Map<String, Object> execute(Map<String, Object> event) {
+        if (event instanceof FlowRecord) {
+            return execute((FlowRecord) event);
+        }
+
         Object timestamp = event.get(Dimension.TIMESTAMP);
         Object first_switched = event.get(Dimension.FIRST_SWITCHED);
 
@@ -35,4 +40,31 @@ public class CalculateDurationFunction {
 
         return event;
     }
+
+    public static FlowRecord execute(FlowRecord event) {
+        long packet_end;
+        long packet_start;
+
+        if (event.has(FlowRecord.TIMESTAMP)) {
+            packet_end = event.getLong(FlowRecord.TIMESTAMP);
+        } else {
+            packet_end = (System.currentTimeMillis() / 1000);
+        }
+
+        if (event.has(FlowRecord.FIRST_SWITCHED)) {
+            packet_start = event.getLong(FlowRecord.FIRST_SWITCHED);
+        } else {
+            packet_start = packet_end;
+        }
+
+        long duration = packet_end - packet_start;
+
+        if (duration < 0) {
+            duration = 1L;
+        }
+
+        event.setLong(FlowRecord.DURATION, duration);
+
+        return event;
+    }
 }
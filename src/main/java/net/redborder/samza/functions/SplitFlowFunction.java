@@ -1,14 +1,14 @@
 package net.redborder.samza.functions;
 
+import net.redborder.samza.util.FlowBucket;
+import net.redborder.samza.util.FlowRecord;
 import net.redborder.samza.util.constants.Dimension;
 import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
-import org.joda.time.Seconds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -17,6 +17,18 @@ public class SplitFlowFunction {
     public static int DELAYED_REALTIME_TIME = 15;
     public static long logMark = System.currentTimeMillis();
 
+    private static final long SECOND = 1000L;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private static final ThreadLocal<Buckets> buckets = new ThreadLocal<Buckets>() {
+        @Override
+        protected Buckets initialValue() {
+            return new Buckets();
+        }
+    };
+
     public static void warnWithTime(String msg, Object... objs) {
         if ((logMark + 300000) < System.currentTimeMillis()) {
             log.warn(msg, objs);
@@ -24,153 +36,227 @@ public class SplitFlowFunction {
         }
     }
 
+    /**
+     * Splits the flow into one message per minute it spans. Those messages are
+     * {@link FlowBucket} views over the event, so the event must not be modified
+     * once it has been split.
+     */
     public static List<Map<String, Object>> split(Map<String, Object> event) {
-        return split(event, new DateTime(DateTimeZone.UTC));
+        long now = System.currentTimeMillis();
+        return split(event, now, hourOfDay(now), minuteOfHour(now));
     }
 
     public static List<Map<String, Object>> split(Map<String, Object> event, DateTime now) {
+        return split(event, now.getMillis(), now.getHourOfDay(), now.getMinuteOfHour());
+    }
+
+    private static List<Map<String, Object>> split(Map<String, Object> event, long now, int nowHour, int nowMinute) {
         List<Map<String, Object>> generatedPackets = new ArrayList<>();
 
         // last_switched is timestamp now
         if (event.containsKey(Dimension.FIRST_SWITCHED) && event.containsKey(Dimension.TIMESTAMP)) {
-            DateTime packet_start = new DateTime(Long.parseLong(event.get(Dimension.FIRST_SWITCHED).toString()) * 1000, DateTimeZone.UTC);
-            DateTime packet_end = new DateTime(Long.parseLong(event.get(Dimension.TIMESTAMP).toString()) * 1000, DateTimeZone.UTC);
-            int now_hour = now.getHourOfDay();
-            int packet_end_hour = packet_end.getHourOfDay();
-
-            // Get the lower limit date time that a packet can have
-            DateTime limit;
-            if (now.getMinuteOfHour() < DELAYED_REALTIME_TIME) {
-                limit = now.minusHours(1).withMinuteOfHour(0);
-            } else {
-                limit = now.withMinuteOfHour(0);
-            }
-
-            // Discard too old events
-            if ((packet_end_hour == now_hour - 1 && now.getMinuteOfHour() > DELAYED_REALTIME_TIME) ||
-                    (now.getMillis() - packet_end.getMillis() > 1000 * 60 * 60)) {
-                warnWithTime("Dropped packet {} because its realtime processor is already shutdown.", event);
-            } else if (packet_start.isBefore(limit)) {
-                // If the lower limit date time is overpassed, correct it
-                warnWithTime("Packet {} first switched was corrected because it overpassed the lower limit (event too old).", event);
-                packet_start = limit;
-                event.put(Dimension.FIRST_SWITCHED, limit.getMillis() / 1000);
-            }
-
-            // Correct events in the future
-            if (packet_end.isAfter(now) && ((packet_end.getHourOfDay() != packet_start.getHourOfDay()) ||
-                    (packet_end.getMillis() - now.getMillis() > 1000 * 60 * 60))) {
-
-                warnWithTime("Packet {} ended in a future segment and I modified its last and/or first switched values.", event);
-                event.put(Dimension.TIMESTAMP, now.getMillis() / 1000);
-                packet_end = now;
+            Buckets buckets = SplitFlowFunction.buckets.get();
 
-                if (!packet_end.isAfter(packet_start)) {
-                    event.put(Dimension.FIRST_SWITCHED, now.getMillis() / 1000);
-                    packet_start = now;
+            if (split(event, now, nowHour, nowMinute, buckets)) {
+                for (int i = 0; i < buckets.size(); i++) {
+                    // We will leave the duration of the message only on the first generated packet
+                    generatedPackets.add(new FlowBucket(event, buckets.timestamp(i),
+                            buckets.bytes(i), buckets.pkts(i), i == 0));
                 }
             }
-
-            DateTime this_start;
-            DateTime this_end = packet_start;
-
-            long bytes = 0;
-            long pkts = 0;
-
-            try {
-                if (event.containsKey(Dimension.BYTES))
-                    bytes = Long.parseLong(event.get(Dimension.BYTES).toString());
-            } catch (NumberFormatException e) {
-                log.warn("Invalid number of bytes in packet {}.", event);
-                return generatedPackets;
-            }
-
-            try {
-                if (event.containsKey(Dimension.PKTS))
-                    pkts = Long.parseLong(event.get(Dimension.PKTS).toString());
-            } catch (NumberFormatException e) {
-                log.warn("Invalid number of packets in packet {}.", event);
-                return generatedPackets;
-            }
-
-            long totalDiff = Seconds.secondsBetween(packet_start, packet_end).getSeconds();
-            long diff, this_bytes, this_pkts;
-            long bytes_count = 0;
-            long pkts_count = 0;
-
-            do {
-                this_start = this_end;
-                this_end = this_start.plusSeconds(60 - this_start.getSecondOfMinute());
-                if (this_end.isAfter(packet_end)) this_end = packet_end;
-                diff = Seconds.secondsBetween(this_start, this_end).getSeconds();
-
-                if (totalDiff == 0) this_bytes = bytes;
-                else this_bytes = (long) Math.ceil(bytes * diff / totalDiff);
-
-                if (totalDiff == 0) this_pkts = pkts;
-                else this_pkts = (long) Math.ceil(pkts * diff / totalDiff);
-
-                bytes_count += this_bytes;
-                pkts_count += this_pkts;
-
-                Map<String, Object> to_send = new HashMap<>();
-                to_send.putAll(event);
-                to_send.put(Dimension.TIMESTAMP, this_start.getMillis() / 1000);
-                to_send.put(Dimension.BYTES, this_bytes);
-                to_send.put(Dimension.PKTS, this_pkts);
-                to_send.remove(Dimension.FIRST_SWITCHED);
-                generatedPackets.add(to_send);
-            } while (this_end.isBefore(packet_end));
-
-            if (bytes != bytes_count || pkts != pkts_count) {
-                int last_index = generatedPackets.size() - 1;
-                Map<String, Object> last = generatedPackets.get(last_index);
-                long new_pkts = ((long) last.get(Dimension.PKTS)) + (pkts - pkts_count);
-                long new_bytes = ((long) last.get(Dimension.BYTES)) + (bytes - bytes_count);
-
-                if (new_pkts > 0) last.put(Dimension.PKTS, new_pkts);
-                if (new_bytes > 0) last.put(Dimension.BYTES, new_bytes);
-
-                generatedPackets.set(last_index, last);
-            }
         } else if (event.containsKey(Dimension.TIMESTAMP)) {
             try {
-                if (event.containsKey(Dimension.BYTES)){
-                    Long bytes = Long.parseLong(event.get(Dimension.BYTES).toString());
-                    event.put(Dimension.BYTES, bytes);
+                if (event.containsKey(Dimension.BYTES)) {
+                    long bytes = FlowRecord.getLong(event, Dimension.BYTES);
+                    FlowRecord.putLong(event, Dimension.BYTES, bytes);
                     generatedPackets.add(event);
                 } else {
                     log.warn("Event doesn't contain bytes {}.", event);
-                    return generatedPackets;
                 }
             } catch (NumberFormatException e) {
                 log.warn("Invalid number of bytes in packet {}.", event);
-                return generatedPackets;
             }
         } else {
             try {
-                if (event.containsKey(Dimension.BYTES)){
-                    Long bytes = Long.parseLong(event.get(Dimension.BYTES).toString());
-                    event.put(Dimension.BYTES, bytes);
+                if (event.containsKey(Dimension.BYTES)) {
+                    long bytes = FlowRecord.getLong(event, Dimension.BYTES);
+                    FlowRecord.putLong(event, Dimension.BYTES, bytes);
                     log.warn("Packet without timestamp -> {}.", event);
-                    event.put(Dimension.TIMESTAMP, now.getMillis() / 1000);
+                    FlowRecord.putLong(event, Dimension.TIMESTAMP, now / SECOND);
                     generatedPackets.add(event);
                 } else {
                     log.warn("Event doesn't contain bytes {}.", event);
-                    return generatedPackets;
                 }
             } catch (NumberFormatException e) {
                 log.warn("Invalid number of bytes in packet {}.", event);
-                return generatedPackets;
             }
         }
 
-        // We will leave the duration of the message only on the first generated packet
-        for (Map<String, Object> packet : generatedPackets) {
-            if (generatedPackets.indexOf(packet) == 0) continue;
-            packet.remove(Dimension.DURATION);
+        return generatedPackets;
+    }
+
+    /**
+     * Splits a flow with first_switched and timestamp into one bucket per minute it
+     * spans. Flows that are too old or that end in the future have their first_switched
+     * and timestamp corrected on the event itself.
+     *
+     * @param now       current time in epoch milliseconds
+     * @param nowHour   hour of day of now in UTC
+     * @param nowMinute minute of hour of now in UTC
+     * @param buckets   reusable sink, cleared before being filled
+     * @return false if the flow has invalid bytes or pkts and must be discarded
+     */
+    public static boolean split(Map<String, Object> event, long now, int nowHour, int nowMinute, Buckets buckets) {
+        buckets.clear();
+
+        // Every instant is kept in milliseconds because the corrections below can
+        // move the flow to now, and the buckets inherit its sub second part
+        long packet_start = FlowRecord.getLong(event, Dimension.FIRST_SWITCHED) * SECOND;
+        long packet_end = FlowRecord.getLong(event, Dimension.TIMESTAMP) * SECOND;
+        int packet_end_hour = hourOfDay(packet_end);
+
+        // Get the lower limit date time that a packet can have
+        long limit = now - nowMinute * MINUTE;
+        if (nowMinute < DELAYED_REALTIME_TIME) {
+            limit -= HOUR;
+        }
+
+        // Discard too old events
+        if ((packet_end_hour == nowHour - 1 && nowMinute > DELAYED_REALTIME_TIME) ||
+                (now - packet_end > HOUR)) {
+            warnWithTime("Dropped packet {} because its realtime processor is already shutdown.", event);
+        } else if (packet_start < limit) {
+            // If the lower limit date time is overpassed, correct it
+            warnWithTime("Packet {} first switched was corrected because it overpassed the lower limit (event too old).", event);
+            packet_start = limit;
+            FlowRecord.putLong(event, Dimension.FIRST_SWITCHED, limit / SECOND);
         }
 
-        return generatedPackets;
+        // Correct events in the future
+        if (packet_end > now && ((hourOfDay(packet_end) != hourOfDay(packet_start)) ||
+                (packet_end - now > HOUR))) {
+
+            warnWithTime("Packet {} ended in a future segment and I modified its last and/or first switched values.", event);
+            FlowRecord.putLong(event, Dimension.TIMESTAMP, now / SECOND);
+            packet_end = now;
+
+            if (packet_end <= packet_start) {
+                FlowRecord.putLong(event, Dimension.FIRST_SWITCHED, now / SECOND);
+                packet_start = now;
+            }
+        }
+
+        long bytes = 0;
+        long pkts = 0;
+
+        try {
+            if (event.containsKey(Dimension.BYTES))
+                bytes = FlowRecord.getLong(event, Dimension.BYTES);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid number of bytes in packet {}.", event);
+            return false;
+        }
+
+        try {
+            if (event.containsKey(Dimension.PKTS))
+                pkts = FlowRecord.getLong(event, Dimension.PKTS);
+        } catch (NumberFormatException e) {
+            log.warn("Invalid number of packets in packet {}.", event);
+            return false;
+        }
+
+        long totalDiff = (packet_end - packet_start) / SECOND;
+        long this_start;
+        long this_end = packet_start;
+        long bytes_count = 0;
+        long pkts_count = 0;
+
+        do {
+            this_start = this_end;
+            this_end = this_start + MINUTE - secondOfMinute(this_start) * SECOND;
+            if (this_end > packet_end) this_end = packet_end;
+            long diff = (this_end - this_start) / SECOND;
+
+            long this_bytes = totalDiff == 0 ? bytes : bytes * diff / totalDiff;
+            long this_pkts = totalDiff == 0 ? pkts : pkts * diff / totalDiff;
+
+            bytes_count += this_bytes;
+            pkts_count += this_pkts;
+
+            buckets.add(this_start / SECOND, this_bytes, this_pkts);
+        } while (this_end < packet_end);
+
+        // The integer division leaves a remainder that goes to the last bucket
+        if (bytes != bytes_count || pkts != pkts_count) {
+            int last = buckets.size() - 1;
+            long new_pkts = buckets.pkts[last] + (pkts - pkts_count);
+            long new_bytes = buckets.bytes[last] + (bytes - bytes_count);
+
+            if (new_pkts > 0) buckets.pkts[last] = new_pkts;
+            if (new_bytes > 0) buckets.bytes[last] = new_bytes;
+        }
+
+        return true;
+    }
+
+    private static int hourOfDay(long millis) {
+        return (int) (floorMod(millis, DAY) / HOUR);
+    }
+
+    private static int minuteOfHour(long millis) {
+        return (int) (floorMod(millis, HOUR) / MINUTE);
+    }
+
+    private static int secondOfMinute(long millis) {
+        return (int) (floorMod(millis, MINUTE) / SECOND);
+    }
+
+    private static long floorMod(long value, long divisor) {
+        long mod = value % divisor;
+        return mod < 0 ? mod + divisor : mod;
+    }
+
+    /**
+     * Timestamp, bytes and pkts of every minute bucket of a flow, in epoch seconds.
+     * Instances are meant to be reused from one flow to the next.
+     */
+    public static class Buckets {
+        private long[] timestamps = new long[16];
+        private long[] bytes = new long[16];
+        private long[] pkts = new long[16];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        public long timestamp(int bucket) {
+            return timestamps[bucket];
+        }
+
+        public long bytes(int bucket) {
+            return bytes[bucket];
+        }
+
+        public long pkts(int bucket) {
+            return pkts[bucket];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void add(long timestamp, long bytes, long pkts) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                this.bytes = Arrays.copyOf(this.bytes, size * 2);
+                this.pkts = Arrays.copyOf(this.pkts, size * 2);
+            }
+
+            timestamps[size] = timestamp;
+            this.bytes[size] = bytes;
+            this.pkts[size] = pkts;
+            size++;
+        }
     }
 }
@@ -4,6 +4,7 @@ import net.redborder.samza.enrichments.EnrichManager;
 import net.redborder.samza.functions.CalculateDurationFunction;
 import net.redborder.samza.functions.SplitFlowFunction;
 import net.redborder.samza.store.StoreManager;
+import net.redborder.samza.util.FlowRecord;
 import net.redborder.samza.util.constants.Constants;
 import net.redborder.samza.util.constants.Dimension;
 import org.apache.samza.config.Config;
@@ -39,14 +40,15 @@ public class FlowProcessor extends Processor<Map<String, Object>> {
 
     @Override
     public void process(String stream, Map<String, Object> message, MessageCollector collector) {
-        Map<String, Object> messageEnrichmentStore = this.storeManager.enrich(message);
-        Map<String, Object> messageEnrichmentLocal = this.enrichManager.enrich(messageEnrichmentStore);
+        // The flow is converted once, every later stage reads its numeric dimensions as longs
+        FlowRecord flow = FlowRecord.of(message);
+        this.storeManager.enrich(flow);
+        this.enrichManager.enrich(flow);
 
-        messageEnrichmentLocal = CalculateDurationFunction.execute(messageEnrichmentLocal);
-        List<Map<String, Object>> splittedMsg = SplitFlowFunction.split(messageEnrichmentLocal);
+        CalculateDurationFunction.execute(flow);
 
         String datasource = DATASOURCE;
-        Object namespace = messageEnrichmentLocal.get(Dimension.NAMESPACE_UUID);
+        Object namespace = flow.get(Dimension.NAMESPACE_UUID);
 
         if (namespace != null) {
             datasource = String.format("%s_%s", DATASOURCE, namespace.toString());
@@ -60,11 +62,15 @@ public class FlowProcessor extends Processor<Map<String, Object>> {
 
         Long flows = flowsNumber.get(datasource);
 
+        // Set before splitting so the generated packets share it with the flow
+        if (flows != null) {
+            flow.put("flows_count", flows);
+        }
+
+        List<Map<String, Object>> splittedMsg = SplitFlowFunction.split(flow);
+
         for (Map<String, Object> msg : splittedMsg) {
             counter++;
-            if(flows != null) {
-                msg.put("flows_count", flows);
-            }
             collector.send(new OutgoingMessageEnvelope(OUTPUT_STREAM, null, msg));
         }
 
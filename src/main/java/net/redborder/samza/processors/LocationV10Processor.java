@@ -81,6 +81,9 @@ public class LocationV10Processor extends Processor<Map<String, Object>> {
 
     @SuppressWarnings("unchecked cast")
     public void processAssociation(Map<String, Object> message, MessageCollector collector) {
+        List<Map<String, Object>> batch = new ArrayList<>();
+        Set<String> batchKeys = new HashSet<>();
+
         try {
             List<Map<String, Object>> messages = (ArrayList) message.get("notifications");
 
@@ -156,45 +159,32 @@ public class LocationV10Processor extends Processor<Map<String, Object>> {
                     toDruid.put(SENSOR_UUID, sensorUuid);
                 }
 
-                store.put(clientMac + namespace_id, toCache);
-
-                toDruid.put(CLIENT_PROFILE, "hard");
-
-                Map<String, Object> storeEnrichment = storeManager.enrich(toDruid);
-                storeEnrichment.putAll(toDruid);
-                Map<String, Object> enrichmentEvent = enrichManager.enrich(storeEnrichment);
-
-                String datasource = DATASOURCE;
-                Object namespace = enrichmentEvent.get(Dimension.NAMESPACE_UUID);
+                String key = storeManager.key(LOCATION_STORE, clientMac, namespace_id);
 
-                if (namespace != null) {
-                    datasource = String.format("%s_%s", DATASOURCE, namespace);
+                if (!batchKeys.add(key)) {
+                    // The earlier event of this client must be enriched before its location is replaced
+                    send(batch, collector);
+                    batchKeys.clear();
+                    batchKeys.add(key);
                 }
 
-                Long counter = countersStore.get(datasource);
-
-                if(counter == null){
-                    counter = 0L;
-                }
-
-                counter++;
-                countersStore.put(datasource, counter);
-
-                Long flows = flowsNumber.get(datasource);
-
-                if(flows != null){
-                    enrichmentEvent.put("flows_count", flows);
-                }
+                store.put(key, toCache);
+                toDruid.put(CLIENT_PROFILE, "hard");
 
-                collector.send(new OutgoingMessageEnvelope(OUTPUT_STREAM, clientMac, enrichmentEvent));
+                batch.add(toDruid);
             }
         } catch (Exception ex) {
             log.warn("MSE10 association event dropped: " + message, ex);
+        } finally {
+            send(batch, collector);
         }
     }
 
     @SuppressWarnings("unchecked cast")
     public void processLocationUpdate(Map<String, Object> message, MessageCollector collector) {
+        List<Map<String, Object>> batch = new ArrayList<>();
+        Set<String> batchKeys = new HashSet<>();
+
         try {
             List<Map<String, Object>> messages = (ArrayList) message.get("notifications");
 
@@ -227,7 +217,8 @@ public class LocationV10Processor extends Processor<Map<String, Object>> {
                         toCache.put(ZONE, locations[3]);
                 }
 
-                Map<String, Object> assocCache = store.get(clientMac + namespace_id);
+                String key = storeManager.key(LOCATION_STORE, clientMac, namespace_id);
+                Map<String, Object> assocCache = store.get(key);
 
                 if (assocCache != null) {
                     toCache.putAll(assocCache);
@@ -258,38 +249,85 @@ public class LocationV10Processor extends Processor<Map<String, Object>> {
                     }
                 }
 
-                store.put(clientMac + namespace_id, toCache);
+                if (!batchKeys.add(key)) {
+                    // The earlier event of this client must be enriched before its location is replaced
+                    send(batch, collector);
+                    batchKeys.clear();
+                    batchKeys.add(key);
+                }
 
-                Map<String, Object> storeEnrichment = storeManager.enrich(toDruid);
-                storeEnrichment.putAll(toDruid);
-                Map<String, Object> enrichmentEvent = enrichManager.enrich(storeEnrichment);
+                store.put(key, toCache);
+                batch.add(toDruid);
+            }
+        } catch (Exception ex) {
+            log.warn("MSE10 locationUpdate event dropped: " + message, ex);
+        } finally {
+            send(batch, collector);
+        }
+    }
 
-                String datasource = DATASOURCE;
-                Object namespace = enrichmentEvent.get(Dimension.NAMESPACE_UUID);
+    /**
+     * Enriches the pending events of a notification together, reading every store
+     * once for all of them, and sends them in order.
+     */
+    private void send(List<Map<String, Object>> batch, MessageCollector collector) {
+        if (batch.isEmpty()) return;
+
+        List<Map<String, Object>> events = new ArrayList<>(batch);
+        List<Map<String, Object>> storeEnrichments = new ArrayList<>(events.size());
+        Map<String, Long> counters = new HashMap<>();
+        Map<String, Long> flowsCounts = new HashMap<>();
+        batch.clear();
+
+        for (Map<String, Object> toDruid : events) {
+            storeEnrichments.add(new HashMap<>(toDruid));
+        }
 
-                if (namespace != null) {
-                    datasource = String.format("%s_%s", DATASOURCE, namespace);
-                }
+        try {
+            try {
+                storeManager.enrichAll(storeEnrichments);
 
-                Long counter = countersStore.get(datasource);
+                for (int i = 0; i < events.size(); i++) {
+                    Map<String, Object> toDruid = events.get(i);
+                    Map<String, Object> storeEnrichment = storeEnrichments.get(i);
+                    storeEnrichment.putAll(toDruid);
+                    Map<String, Object> enrichmentEvent = enrichManager.enrich(storeEnrichment);
 
-                if(counter == null){
-                    counter = 0L;
-                }
+                    String datasource = DATASOURCE;
+                    Object namespace = enrichmentEvent.get(Dimension.NAMESPACE_UUID);
 
-                counter++;
-                countersStore.put(datasource, counter);
+                    if (namespace != null) {
+                        datasource = String.format("%s_%s", DATASOURCE, namespace);
+                    }
 
-                Long flows = flowsNumber.get(datasource);
+                    Long counter = counters.get(datasource);
 
-                if(flows != null){
-                    enrichmentEvent.put("flows_count", flows);
-                }
+                    if (counter == null) {
+                        counter = countersStore.get(datasource);
+                        if (counter == null) counter = 0L;
+                    }
+
+                    counters.put(datasource, counter + 1);
 
-                collector.send(new OutgoingMessageEnvelope(OUTPUT_STREAM, clientMac, enrichmentEvent));
+                    if (!flowsCounts.containsKey(datasource)) {
+                        flowsCounts.put(datasource, flowsNumber.get(datasource));
+                    }
+
+                    Long flows = flowsCounts.get(datasource);
+
+                    if (flows != null) {
+                        enrichmentEvent.put("flows_count", flows);
+                    }
+
+                    collector.send(new OutgoingMessageEnvelope(OUTPUT_STREAM, toDruid.get(CLIENT_MAC), enrichmentEvent));
+                }
+            } finally {
+                for (Map.Entry<String, Long> counter : counters.entrySet()) {
+                    countersStore.put(counter.getKey(), counter.getValue());
+                }
             }
         } catch (Exception ex) {
-            log.warn("MSE10 locationUpdate event dropped: " + message, ex);
+            log.warn("MSE10 events dropped: " + events, ex);
         }
     }
 }
@@ -161,7 +161,7 @@ public class LocationV89Processor extends Processor<Map<String, Object>> {
                 toDruid.put("timestamp", System.currentTimeMillis() / 1000);
             }
 
-            if (macAddress != null) store.put(macAddress + namespace_id, toCache);
+            if (macAddress != null) store.put(storeManager.key(LOCATION_STORE, macAddress, namespace_id), toCache);
 
             toDruid.put(CLIENT_PROFILE, "hard");
 
@@ -97,11 +97,11 @@ public class MerakiProcessor extends Processor<Map<String, Object>> {
                 toDruid.put(CLIENT_RSSI, rssiName);
             }
 
-            store.put(clientMac, toCache);
+            store.put(storeManager.key(LOCATION_STORE, clientMac), toCache);
 
             toDruid.putAll(message);
 
-            Map<String, Object> storeEnrichment = storeManager.enrich(toDruid);
+            Map<String, Object> storeEnrichment = storeManager.enrich(new HashMap<>(toDruid));
             storeEnrichment.putAll(toDruid);
             Map<String, Object> enrichmentEvent = enrichManager.enrich(storeEnrichment);
 
@@ -79,7 +79,7 @@ public class NmspProcessor extends Processor<Map<String, Object>> {
                 Integer rssi = Collections.max(clientRssis);
                 String apMac = apMacs.get(clientRssis.indexOf(rssi));
 
-                Map<String, Object> infoCache = storeInfo.get(mac + namespace_id);
+                Map<String, Object> infoCache = storeInfo.get(storeManager.key(NMSP_STORE_INFO, mac, namespace_id));
                 String dot11Status = "PROBING";
 
                 if (infoCache == null) {
@@ -100,7 +100,7 @@ public class NmspProcessor extends Processor<Map<String, Object>> {
                             toDruid = null;
                         }
                     } else {
-                        storeInfo.delete(mac + namespace_id);
+                        storeInfo.delete(storeManager.key(NMSP_STORE_INFO, mac, namespace_id));
                         toCache.put(CLIENT_RSSI_NUM, rssi);
                         toCache.put(WIRELESS_STATION, apMac);
                         toCache.put(NMSP_DOT11STATUS, "ASSOCIATED");
@@ -167,9 +167,9 @@ public class NmspProcessor extends Processor<Map<String, Object>> {
                     if (!namespace_id.equals(""))
                         toDruid.put(NAMESPACE_UUID, namespace_id);
 
-                    storeMeasure.put(mac + namespace_id, toCache);
+                    storeMeasure.put(storeManager.key(NMSP_STORE_MEASURE, mac, namespace_id), toCache);
 
-                    Map<String, Object> storeEnrichment = storeManager.enrich(toDruid);
+                    Map<String, Object> storeEnrichment = storeManager.enrich(new HashMap<>(toDruid));
                     storeEnrichment.putAll(toDruid);
                     Map<String, Object> enrichmentEvent = enrichManager.enrich(storeEnrichment);
 
@@ -245,9 +245,9 @@ public class NmspProcessor extends Processor<Map<String, Object>> {
 
             toDruid.put(CLIENT_PROFILE, "hard");
             toDruid.put(CLIENT_MAC, mac);
-            storeInfo.put(mac + namespace_id, toCache);
+            storeInfo.put(storeManager.key(NMSP_STORE_INFO, mac, namespace_id), toCache);
 
-            Map<String, Object> storeEnrichment = storeManager.enrich(toDruid);
+            Map<String, Object> storeEnrichment = storeManager.enrich(new HashMap<>(toDruid));
             storeEnrichment.putAll(toDruid);
             Map<String, Object> enrichmentEvent = enrichManager.enrich(storeEnrichment);
 
@@ -77,7 +77,7 @@ public class PmsProcessor extends Processor<Map<String, Object>> {
         }
 
         if(!toCache.isEmpty()) {
-            storePms.put(clientMac + namespace_id, toCache);
+            storePms.put(storeManager.key(PMS_STORE, clientMac, namespace_id), toCache);
         }
     }
 
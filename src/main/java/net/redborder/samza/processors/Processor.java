@@ -17,7 +17,6 @@ import java.util.*;
 
 public abstract class Processor<T> {
     private static final Logger log = LoggerFactory.getLogger(Processor.class);
-    private static Map<String, List<Processor>> processors = new HashMap<>();
 
     protected StoreManager storeManager;
     protected EnrichManager enrichManager;
@@ -32,59 +31,67 @@ public abstract class Processor<T> {
     }
 
     public static List<Processor> getProcessors(String streamName, Config config, TaskContext context, StoreManager storeManager, PostgresqlManager postgresqlManager) {
-        if (!processors.containsKey(streamName)) {
-            List<String> enrichments;
-            EnrichManager enrichManager = new EnrichManager();
+        EnrichManager enrichManager = createEnrichManager(streamName, config, context, postgresqlManager);
+        return createProcessors(streamName, config, context, storeManager, enrichManager);
+    }
 
-            log.info("Asked for processor " + streamName + " but it wasn't found. Lets try to create it.");
+    public static EnrichManager createEnrichManager(String streamName, Config config, TaskContext context, PostgresqlManager postgresqlManager) {
+        List<String> enrichments;
+        EnrichManager enrichManager = new EnrichManager(streamName, context.getMetricsRegistry());
+        enrichManager.setParallelism(config.getInt(EnrichManager.PARALLELISM, 0));
 
-            try {
-                enrichments = config.getList("redborder.enrichments.streams." + streamName);
-            } catch (ConfigException e) {
-                log.info("Stream " + streamName + " does not have enrichments enabled");
-                enrichments = new ArrayList<>();
-            }
+        try {
+            enrichments = config.getList("redborder.enrichments.streams." + streamName);
+        } catch (ConfigException e) {
+            log.info("Stream " + streamName + " does not have enrichments enabled");
+            enrichments = new ArrayList<>();
+        }
 
-            for (String enrichment : enrichments) {
-                try {
-                    String className = config.get("redborder.enrichments.types." + enrichment);
-
-                    if (className != null) {
-                        Class enrichClass = Class.forName(className);
-                        IEnrich enrich = (IEnrich) enrichClass.newInstance();
-                        enrich.setPostgresqlManager(postgresqlManager);
-                        enrichManager.addEnrichment(enrich);
-                    } else {
-                        log.warn("Couldn't find property redborder.enrichments.types." + enrichment + " on config properties");
-                    }
-                } catch (ClassNotFoundException e) {
-                    log.error("Couldn't find the class associated with the enrichment " + enrichment);
-                } catch (InstantiationException | IllegalAccessException e) {
-                    log.error("Couldn't create the instance associated with the enrichment " + enrichment, e);
+        for (String enrichment : enrichments) {
+            try {
+                String className = config.get("redborder.enrichments.types." + enrichment);
+
+                if (className != null) {
+                    Class enrichClass = Class.forName(className);
+                    IEnrich enrich = (IEnrich) enrichClass.newInstance();
+                    enrich.setPostgresqlManager(postgresqlManager);
+                    enrich.init(config, context);
+                    enrichManager.addEnrichment(enrich);
+                } else {
+                    log.warn("Couldn't find property redborder.enrichments.types." + enrichment + " on config properties");
                 }
+            } catch (ClassNotFoundException e) {
+                log.error("Couldn't find the class associated with the enrichment " + enrichment);
+            } catch (InstantiationException | IllegalAccessException e) {
+                log.error("Couldn't create the instance associated with the enrichment " + enrichment, e);
             }
-            List<String> classNames = config.getList("redborder.processors." + streamName);
-            List<Processor> processorsList = new ArrayList<>();
-
-            for (String className : classNames) {
-                try {
-                    Class foundClass = Class.forName(className);
-                    Constructor constructor = foundClass.getConstructor(StoreManager.class, EnrichManager.class, Config.class, TaskContext.class);
-                    Processor processor = (Processor) constructor.newInstance(new Object[]{storeManager, enrichManager, config, context});
-                    processorsList.add(processor);
-
-                    processors.put(streamName, processorsList);
-                } catch (ClassNotFoundException e) {
-                    log.error("Couldn't find the class [" + className + "] associated with the stream " + streamName);
-                    processors.put(streamName, Arrays.asList((Processor) new DummyProcessor()));
-                } catch (NoSuchMethodException | InstantiationException | InvocationTargetException | IllegalAccessException e) {
-                    log.error("Couldn't create the instance associated with the stream " + streamName, e);
-                    processors.put(streamName, Arrays.asList((Processor) new DummyProcessor()));
-                }
+        }
+
+        return enrichManager;
+    }
+
+    public static List<Processor> createProcessors(String streamName, Config config, TaskContext context, StoreManager storeManager, EnrichManager enrichManager) {
+        List<String> classNames = config.getList("redborder.processors." + streamName);
+        List<Processor> processorsList = new ArrayList<>();
+
+        log.info("Creating processors for stream " + streamName + ": " + classNames);
+
+        for (String className : classNames) {
+            try {
+                Class foundClass = Class.forName(className);
+                Constructor constructor = foundClass.getConstructor(StoreManager.class, EnrichManager.class, Config.class, TaskContext.class);
+                Processor processor = (Processor) constructor.newInstance(new Object[]{storeManager, enrichManager, config, context});
+                processorsList.add(processor);
+            } catch (ClassNotFoundException e) {
+                log.error("Couldn't find the class [" + className + "] associated with the stream " + streamName);
+                return Arrays.asList((Processor) new DummyProcessor());
+            } catch (NoSuchMethodException | InstantiationException | InvocationTargetException | IllegalAccessException e) {
+                log.error("Couldn't create the instance associated with the stream " + streamName, e);
+                return Arrays.asList((Processor) new DummyProcessor());
             }
         }
 
-        return processors.get(streamName);
+        return processorsList;
     }
 
     public abstract void process(String stream, T message, MessageCollector collector);
@@ -0,0 +1,52 @@
+package net.redborder.samza.processors;
+
+import net.redborder.samza.enrichments.EnrichManager;
+import net.redborder.samza.store.StoreManager;
+import net.redborder.samza.util.PostgresqlManager;
+import org.apache.samza.config.Config;
+import org.apache.samza.task.MessageCollector;
+import org.apache.samza.task.TaskContext;
+
+import java.util.List;
+
+/**
+ * Processors, and the enrichment chain they share, that handle every message of
+ * one input stream inside a single task. It is built once when the task starts
+ * and never changes afterwards.
+ */
+public class ProcessorPipeline {
+    private final String stream;
+    private final EnrichManager enrichManager;
+    private final Processor[] processors;
+
+    public ProcessorPipeline(String stream, EnrichManager enrichManager, List<Processor> processors) {
+        this.stream = stream;
+        this.enrichManager = enrichManager;
+        this.processors = processors.toArray(new Processor[processors.size()]);
+    }
+
+    public static ProcessorPipeline build(String stream, Config config, TaskContext context, StoreManager storeManager, PostgresqlManager postgresqlManager) {
+        EnrichManager enrichManager = Processor.createEnrichManager(stream, config, context, postgresqlManager);
+        List<Processor> processors = Processor.createProcessors(stream, config, context, storeManager, enrichManager);
+        return new ProcessorPipeline(stream, enrichManager, processors);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void process(Object message, MessageCollector collector) {
+        for (Processor processor : processors) {
+            processor.process(stream, message, collector);
+        }
+    }
+
+    public String getStream() {
+        return stream;
+    }
+
+    public EnrichManager getEnrichManager() {
+        return enrichManager;
+    }
+
+    public int size() {
+        return processors.length;
+    }
+}
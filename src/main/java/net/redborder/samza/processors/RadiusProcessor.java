@@ -128,16 +128,16 @@ public class RadiusProcessor extends Processor<Map<String, Object>> {
             if (clientConnection != null) {
                 toDruid.put(CLIENT_ACCOUNTING_TYPE, clientConnection.toLowerCase());
                 if (clientConnection.equals("Stop")) {
-                    //storeRadius.delete(clientMac + namespace_id);
+                    //storeRadius.delete(storeManager.key(RADIUS_STORE, clientMac, namespace_id));
                     log.debug("REMOVE  client: {} - namesapce: {} - contents: " + toCache, clientMac, namespace_id);
 
                 } else {
-                    storeRadius.put(clientMac + namespace_id, toCache);
+                    storeRadius.put(storeManager.key(RADIUS_STORE, clientMac, namespace_id), toCache);
                     log.debug("PUT  client: {} - namesapce: {} - contents: " + toCache, clientMac, namespace_id);
 
                 }
             } else {
-                storeRadius.put(clientMac + namespace_id, toCache);
+                storeRadius.put(storeManager.key(RADIUS_STORE, clientMac, namespace_id), toCache);
                 log.debug("PUT  client: {} - namesapce: {} - contents: " + toCache, clientMac, namespace_id);
             }
 
@@ -145,7 +145,7 @@ public class RadiusProcessor extends Processor<Map<String, Object>> {
             toDruid.put(CLIENT_PROFILE, "hard");
             toDruid.putAll(toCache);
 
-            Map<String, Object> storeMessage = storeManager.enrich(toDruid);
+            Map<String, Object> storeMessage = storeManager.enrich(new HashMap<>(toDruid));
             storeMessage.putAll(toDruid);
             Map<String, Object> enrichmentMessage = enrichManager.enrich(storeMessage);
 
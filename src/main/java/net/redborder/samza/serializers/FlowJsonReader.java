@@ -0,0 +1,356 @@
+package net.redborder.samza.serializers;
+
+import net.redborder.samza.util.FlowRecord;
+import org.apache.samza.SamzaException;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+
+/**
+ * Single pass reader of flat JSON objects. Top level strings, numbers, booleans and
+ * nulls are decoded the same way Jackson does (integral numbers become Integer,
+ * Long or BigInteger depending on their size), numeric flow dimensions go straight
+ * to the slots of the record and nested objects or arrays are kept as {@link RawJson}.
+ */
+class FlowJsonReader {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+    private static final int KEY_CACHE_SIZE = 512;
+
+    // Dimension names repeat on every message, so their strings are reused
+    private final CachedKey[] keyCache = new CachedKey[KEY_CACHE_SIZE];
+
+    private byte[] json;
+    private int pos;
+    private int end;
+
+    public FlowRecord read(byte[] bytes) {
+        json = bytes;
+        pos = 0;
+        end = bytes.length;
+
+        try {
+            FlowRecord record = new FlowRecord();
+
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    expect('"');
+                    String key = readKey();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    readValue(record, key);
+                    skipWhitespace();
+
+                    byte b = next();
+                    if (b == '}') break;
+                    if (b != ',') throw error("Expected ',' or '}'");
+                }
+            }
+
+            skipWhitespace();
+            if (pos != end) throw error("Unexpected data after the message");
+
+            return record;
+        } finally {
+            json = null;
+        }
+    }
+
+    private void readValue(FlowRecord record, String key) {
+        byte b = peek();
+
+        if (b == '"') {
+            pos++;
+            record.put(key, readString());
+        } else if (b == '{' || b == '[') {
+            int start = pos;
+            skipNested();
+            record.put(key, new RawJson(json, start, pos - start));
+        } else if (b == 't') {
+            expectLiteral("true");
+            record.put(key, Boolean.TRUE);
+        } else if (b == 'f') {
+            expectLiteral("false");
+            record.put(key, Boolean.FALSE);
+        } else if (b == 'n') {
+            expectLiteral("null");
+            record.put(key, null);
+        } else if (b == '-' || (b >= '0' && b <= '9')) {
+            readNumber(record, key);
+        } else {
+            throw error("Unexpected character '" + (char) b + "'");
+        }
+    }
+
+    private void readNumber(FlowRecord record, String key) {
+        int start = pos;
+        boolean negative = false;
+
+        if (json[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+
+        int digitsStart = pos;
+        long value = 0;
+        boolean overflow = false;
+
+        while (pos < end && json[pos] >= '0' && json[pos] <= '9') {
+            int digit = json[pos] - '0';
+            // Accumulated as a negative number to reach Long.MIN_VALUE
+            if (value < (Long.MIN_VALUE + digit) / 10) overflow = true;
+            value = value * 10 - digit;
+            pos++;
+        }
+
+        if (pos == digitsStart) throw error("Invalid number");
+
+        if (pos < end && (json[pos] == '.' || json[pos] == 'e' || json[pos] == 'E')) {
+            while (pos < end && isNumberChar(json[pos])) pos++;
+            String number = new String(json, start, pos - start, LATIN1);
+
+            try {
+                record.put(key, Double.valueOf(number));
+            } catch (NumberFormatException e) {
+                throw error("Invalid number " + number);
+            }
+        } else if (overflow || (!negative && value == Long.MIN_VALUE)) {
+            record.put(key, new BigInteger(new String(json, start, pos - start, LATIN1)));
+        } else {
+            if (!negative) value = -value;
+
+            int slot = FlowRecord.slot(key);
+            if (slot >= 0) {
+                record.setLong(slot, value);
+            } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                record.put(key, (int) value);
+            } else {
+                record.put(key, value);
+            }
+        }
+    }
+
+    private static boolean isNumberChar(byte b) {
+        return (b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-';
+    }
+
+    private String readKey() {
+        int start = pos;
+        int hash = 0;
+
+        while (pos < end) {
+            byte b = json[pos];
+            if (b == '"') {
+                int length = pos - start;
+                pos++;
+
+                int index = hash & (KEY_CACHE_SIZE - 1);
+                CachedKey cached = keyCache[index];
+                if (cached != null && cached.matches(json, start, length)) {
+                    return cached.key;
+                }
+
+                String key = new String(json, start, length, UTF8);
+                keyCache[index] = new CachedKey(json, start, length, key);
+                return key;
+            } else if (b == '\\') {
+                // Escaped keys are rare, those are decoded without the cache
+                pos = start;
+                return readString();
+            }
+
+            hash = 31 * hash + b;
+            pos++;
+        }
+
+        throw error("Unterminated string");
+    }
+
+    private String readString() {
+        int start = pos;
+        boolean ascii = true;
+
+        while (pos < end) {
+            byte b = json[pos];
+            if (b == '"') {
+                String value = new String(json, start, pos - start, ascii ? LATIN1 : UTF8);
+                pos++;
+                return value;
+            } else if (b == '\\') {
+                return readEscapedString(start);
+            } else if (b < 0) {
+                ascii = false;
+            }
+            pos++;
+        }
+
+        throw error("Unterminated string");
+    }
+
+    private String readEscapedString(int start) {
+        StringBuilder builder = new StringBuilder(pos - start + 16);
+        builder.append(new String(json, start, pos - start, UTF8));
+
+        int chunk = pos;
+        while (pos < end) {
+            byte b = json[pos];
+
+            if (b == '"') {
+                builder.append(new String(json, chunk, pos - chunk, UTF8));
+                pos++;
+                return builder.toString();
+            } else if (b == '\\') {
+                builder.append(new String(json, chunk, pos - chunk, UTF8));
+                pos++;
+                if (pos >= end) break;
+
+                byte escaped = json[pos++];
+                switch (escaped) {
+                    case '"':
+                        builder.append('"');
+                        break;
+                    case '\\':
+                        builder.append('\\');
+                        break;
+                    case '/':
+                        builder.append('/');
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        builder.append(readUnicodeEscape());
+                        break;
+                    default:
+                        throw error("Invalid escape '\\" + (char) escaped + "'");
+                }
+
+                chunk = pos;
+            } else {
+                pos++;
+            }
+        }
+
+        throw error("Unterminated string");
+    }
+
+    private char readUnicodeEscape() {
+        if (pos + 4 > end) throw error("Invalid unicode escape");
+
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(json[pos++], 16);
+            if (digit < 0) throw error("Invalid unicode escape");
+            value = (value << 4) | digit;
+        }
+
+        return (char) value;
+    }
+
+    private void skipNested() {
+        int depth = 0;
+
+        while (pos < end) {
+            byte b = json[pos++];
+
+            if (b == '"') {
+                skipString();
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 0) return;
+            }
+        }
+
+        throw error("Unterminated object or array");
+    }
+
+    private void skipString() {
+        while (pos < end) {
+            byte b = json[pos++];
+            if (b == '"') return;
+            if (b == '\\') pos++;
+        }
+
+        throw error("Unterminated string");
+    }
+
+    private void skipWhitespace() {
+        while (pos < end) {
+            byte b = json[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return;
+            pos++;
+        }
+    }
+
+    private void expectLiteral(String literal) {
+        int length = literal.length();
+        if (pos + length > end) throw error("Expected " + literal);
+
+        for (int i = 0; i < length; i++) {
+            if (json[pos + i] != literal.charAt(i)) throw error("Expected " + literal);
+        }
+
+        pos += length;
+    }
+
+    private void expect(char c) {
+        if (next() != c) throw error("Expected '" + c + "'");
+    }
+
+    private byte peek() {
+        if (pos >= end) throw error("Unexpected end of message");
+        return json[pos];
+    }
+
+    private byte next() {
+        if (pos >= end) throw error("Unexpected end of message");
+        return json[pos++];
+    }
+
+    private SamzaException error(String reason) {
+        return new SamzaException(reason + " at position " + pos + " of JSON message");
+    }
+
+    private static final class CachedKey {
+        private final byte[] bytes;
+        private final String key;
+
+        CachedKey(byte[] json, int offset, int length, String key) {
+            this.bytes = new byte[length];
+            System.arraycopy(json, offset, this.bytes, 0, length);
+            this.key = key;
+        }
+
+        boolean matches(byte[] json, int offset, int length) {
+            if (bytes.length != length) return false;
+
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != json[offset + i]) return false;
+            }
+
+            return true;
+        }
+    }
+}
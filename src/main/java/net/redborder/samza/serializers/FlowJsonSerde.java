@@ -0,0 +1,35 @@
+package net.redborder.samza.serializers;
+
+import org.apache.samza.serializers.Serde;
+
+/**
+ * JSON serde for flat messages such as flows. Messages are decoded straight into
+ * {@link net.redborder.samza.util.FlowRecord} and encoded without building
+ * intermediate maps or strings. Readers and writers are kept per thread so their
+ * key cache and buffers are reused from one message to the next.
+ */
+public class FlowJsonSerde implements Serde<Object> {
+    private static final ThreadLocal<FlowJsonReader> readers = new ThreadLocal<FlowJsonReader>() {
+        @Override
+        protected FlowJsonReader initialValue() {
+            return new FlowJsonReader();
+        }
+    };
+
+    private static final ThreadLocal<FlowJsonWriter> writers = new ThreadLocal<FlowJsonWriter>() {
+        @Override
+        protected FlowJsonWriter initialValue() {
+            return new FlowJsonWriter();
+        }
+    };
+
+    @Override
+    public Object fromBytes(byte[] bytes) {
+        return readers.get().read(bytes);
+    }
+
+    @Override
+    public byte[] toBytes(Object message) {
+        return writers.get().write(message);
+    }
+}
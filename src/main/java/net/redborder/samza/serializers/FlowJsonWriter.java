@@ -0,0 +1,288 @@
+package net.redborder.samza.serializers;
+
+import net.redborder.samza.util.FlowBucket;
+import net.redborder.samza.util.FlowRecord;
+import net.redborder.samza.util.constants.Dimension;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes messages as JSON into a buffer that is reused between messages. Numeric
+ * slots of flow records and split buckets are written without boxing and
+ * {@link RawJson} values are copied verbatim.
+ */
+class FlowJsonWriter {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private byte[] buffer = new byte[4096];
+    private int size;
+
+    public byte[] write(Object message) {
+        size = 0;
+        writeValue(message);
+        byte[] bytes = Arrays.copyOf(buffer, size);
+
+        // Do not keep huge buffers around because of a single big message
+        if (buffer.length > MAX_RETAINED_BUFFER) {
+            buffer = new byte[4096];
+        }
+
+        return bytes;
+    }
+
+    private void writeValue(Object value) {
+        if (value == null) {
+            writeBytes(NULL);
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            writeBytes((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof FlowRecord) {
+            writeRecord((FlowRecord) value);
+        } else if (value instanceof FlowBucket && !((FlowBucket) value).isDetached()) {
+            writeBucket((FlowBucket) value);
+        } else if (value instanceof Map) {
+            writeMap((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            writeCollection((Collection<?>) value);
+        } else if (value instanceof Object[]) {
+            writeCollection(Arrays.asList((Object[]) value));
+        } else if (value instanceof RawJson) {
+            RawJson raw = (RawJson) value;
+            writeBytes(raw.getBytes(), raw.getOffset(), raw.getLength());
+        } else if (value instanceof Number) {
+            writeAscii(value.toString());
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    private void writeRecord(FlowRecord record) {
+        boolean first = true;
+        writeByte('{');
+
+        for (int slot = 0; slot < FlowRecord.SLOTS; slot++) {
+            if (record.hasLong(slot)) {
+                if (!first) writeByte(',');
+                writeString(FlowRecord.key(slot));
+                writeByte(':');
+                writeLong(record.getLong(slot));
+                first = false;
+            }
+        }
+
+        for (Map.Entry<String, Object> entry : record.otherDimensions().entrySet()) {
+            if (!first) writeByte(',');
+            writeString(entry.getKey());
+            writeByte(':');
+            writeValue(entry.getValue());
+            first = false;
+        }
+
+        writeByte('}');
+    }
+
+    private void writeBucket(FlowBucket bucket) {
+        Map<String, Object> parent = bucket.parent();
+
+        writeByte('{');
+        writeString(Dimension.TIMESTAMP);
+        writeByte(':');
+        writeLong(bucket.timestamp());
+        writeByte(',');
+        writeString(Dimension.BYTES);
+        writeByte(':');
+        writeLong(bucket.bytes());
+        writeByte(',');
+        writeString(Dimension.PKTS);
+        writeByte(':');
+        writeLong(bucket.pkts());
+
+        if (bucket.withDuration() && parent.containsKey(Dimension.DURATION)) {
+            writeByte(',');
+            writeString(Dimension.DURATION);
+            writeByte(':');
+
+            if (parent instanceof FlowRecord && ((FlowRecord) parent).hasLong(FlowRecord.DURATION)) {
+                writeLong(((FlowRecord) parent).getLong(FlowRecord.DURATION));
+            } else {
+                writeValue(parent.get(Dimension.DURATION));
+            }
+        }
+
+        // The numeric dimensions of the flow are the ones the bucket overrides or hides
+        Map<String, Object> dimensions = parent instanceof FlowRecord ? ((FlowRecord) parent).otherDimensions() : parent;
+        for (Map.Entry<String, Object> entry : dimensions.entrySet()) {
+            if (FlowRecord.slot(entry.getKey()) >= 0) continue;
+
+            writeByte(',');
+            writeString(entry.getKey());
+            writeByte(':');
+            writeValue(entry.getValue());
+        }
+
+        writeByte('}');
+    }
+
+    private void writeMap(Map<?, ?> map) {
+        boolean first = true;
+        writeByte('{');
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!first) writeByte(',');
+            writeString(String.valueOf(entry.getKey()));
+            writeByte(':');
+            writeValue(entry.getValue());
+            first = false;
+        }
+
+        writeByte('}');
+    }
+
+    private void writeCollection(Collection<?> collection) {
+        boolean first = true;
+        writeByte('[');
+
+        for (Object value : collection) {
+            if (!first) writeByte(',');
+            writeValue(value);
+            first = false;
+        }
+
+        writeByte(']');
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+
+        ensure(20);
+
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) digits++;
+
+        int position = size + digits;
+        do {
+            buffer[--position] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+
+        size += digits;
+    }
+
+    private void writeString(String value) {
+        int length = value.length();
+        // Worst case is every char written as a six byte unicode escape
+        ensure(length * 6 + 2);
+        buffer[size++] = '"';
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    buffer[size++] = (byte) c;
+                } else {
+                    writeEscape(c);
+                }
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xc0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                buffer[size++] = '?';
+            } else {
+                buffer[size++] = (byte) (0xe0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[size++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+
+        buffer[size++] = '"';
+    }
+
+    private void writeEscape(char c) {
+        buffer[size++] = '\\';
+
+        switch (c) {
+            case '"':
+                buffer[size++] = '"';
+                break;
+            case '\\':
+                buffer[size++] = '\\';
+                break;
+            case '\n':
+                buffer[size++] = 'n';
+                break;
+            case '\r':
+                buffer[size++] = 'r';
+                break;
+            case '\t':
+                buffer[size++] = 't';
+                break;
+            case '\b':
+                buffer[size++] = 'b';
+                break;
+            case '\f':
+                buffer[size++] = 'f';
+                break;
+            default:
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = HEX[c >> 4];
+                buffer[size++] = HEX[c & 0xf];
+        }
+    }
+
+    private void writeAscii(String value) {
+        int length = value.length();
+        ensure(length);
+
+        for (int i = 0; i < length; i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void writeByte(char c) {
+        ensure(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void writeBytes(byte[] bytes) {
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) {
+        ensure(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    private void ensure(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.redborder.samza.serializers;
+
+import java.nio.charset.Charset;
+
+/**
+ * Nested JSON object or array that {@link FlowJsonSerde} did not decode. It points
+ * to the bytes of the message it came from and is written back verbatim.
+ */
+public final class RawJson {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    public RawJson(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public RawJson(String json) {
+        this.bytes = json.getBytes(UTF8);
+        this.offset = 0;
+        this.length = bytes.length;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RawJson)) return false;
+
+        RawJson other = (RawJson) o;
+        if (length != other.length) return false;
+
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != other.bytes[other.offset + i]) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, UTF8);
+    }
+}
@@ -0,0 +1,373 @@
+package net.redborder.samza.serializers;
+
+import org.apache.samza.SamzaException;
+import org.apache.samza.serializers.Serde;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import static net.redborder.samza.util.constants.Dimension.*;
+
+/**
+ * Binary serde for the values of the enrichment stores. Values are written as a
+ * version byte followed by a typed value, numbers keep their type and map keys that
+ * are known dimensions take a single byte. Values written by the JSON serde never
+ * start with the version byte and are still read, so a store can switch to this
+ * serde keeping its changelog.
+ */
+public class StoreValueSerde implements Serde<Object> {
+    static final byte VERSION = 1;
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int FLOAT = 5;
+    private static final int DOUBLE = 6;
+    private static final int STRING = 7;
+    private static final int MAP = 8;
+    private static final int LIST = 9;
+    // Any other value, as JSON text
+    private static final int JSON = 10;
+
+    /**
+     * Map keys are written as their position in this table plus one, or as 0 and the
+     * key itself. The positions are stored, so names must only be appended.
+     */
+    static final String[] FIELDS = {
+            CLIENT_MAC, NAMESPACE_UUID, WIRELESS_STATION, WIRELESS_ID, WIRELESS_CHANNEL, WIRELESS_OPERATOR,
+            CLIENT_ID, CLIENT_LATLNG, CLIENT_RSSI, CLIENT_RSSI_NUM, CLIENT_PROFILE, CLIENT_MAC_VENDOR, CLIENT_OS,
+            CLIENT_AUTH_TYPE, CLIENT_FULLNAME, CLIENT_GENDER, CLIENT_LOYALITY, CLIENT_VIP, DOT11STATUS,
+            NMSP_DOT11PROTOCOL, SRC_VLAN, "last_seen", SENSOR_NAME, SENSOR_UUID,
+            CAMPUS, BUILDING, FLOOR, ZONE, DEPLOYMENT, NAMESPACE, MARKET, ORGANIZATION, SERVICE_PROVIDER,
+            CAMPUS_UUID, BUILDING_UUID, FLOOR_UUID, ZONE_UUID, DEPLOYMENT_UUID, MARKET_UUID, ORGANIZATION_UUID,
+            SERVICE_PROVIDER_UUID
+    };
+
+    private static final Map<String, Integer> FIELD_IDS = new HashMap<>();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    static {
+        for (int i = 0; i < FIELDS.length; i++) {
+            FIELD_IDS.put(FIELDS[i], i + 1);
+        }
+    }
+
+    // Encoding buffers are reused between values of the same thread
+    private static final ThreadLocal<Writer> writers = new ThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public Object fromBytes(byte[] bytes) {
+        if (bytes.length > 0 && bytes[0] == VERSION) {
+            Reader reader = new Reader(bytes);
+            Object value = reader.readValue();
+            if (reader.pos != bytes.length) throw new SamzaException("Unexpected data after the store value");
+            return value;
+        }
+
+        // JSON never starts with a control character
+        if (bytes.length > 0 && bytes[0] >= 0 && bytes[0] < ' ') {
+            throw new SamzaException("Unknown store value version " + bytes[0]);
+        }
+
+        return fromJson(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public byte[] toBytes(Object value) {
+        return writers.get().write(value);
+    }
+
+    private static Object fromJson(byte[] bytes, int offset, int length) {
+        try {
+            return mapper.readValue(new String(bytes, offset, length, UTF8), Object.class);
+        } catch (IOException e) {
+            throw new SamzaException("Couldn't read the store value as JSON", e);
+        }
+    }
+
+    private static final class Writer {
+        private byte[] buffer = new byte[512];
+        private int size;
+
+        byte[] write(Object value) {
+            size = 0;
+            writeByte(VERSION);
+            writeValue(value);
+            byte[] bytes = Arrays.copyOf(buffer, size);
+
+            if (buffer.length > MAX_RETAINED_BUFFER) {
+                buffer = new byte[512];
+            }
+
+            return bytes;
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writeByte(INT);
+                writeVarint(zigzag(((Number) value).longValue()));
+            } else if (value instanceof Long) {
+                writeByte(LONG);
+                writeVarint(zigzag((Long) value));
+            } else if (value instanceof Double) {
+                writeByte(DOUBLE);
+                writeFixed(Double.doubleToLongBits((Double) value), 8);
+            } else if (value instanceof Float) {
+                writeByte(FLOAT);
+                writeFixed(Float.floatToIntBits((Float) value), 4);
+            } else if (value instanceof Boolean) {
+                writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Map) {
+                writeMap((Map<?, ?>) value);
+            } else if (value instanceof Collection) {
+                writeList((Collection<?>) value);
+            } else if (value instanceof Object[]) {
+                writeList(Arrays.asList((Object[]) value));
+            } else {
+                writeJson(value);
+            }
+        }
+
+        private void writeMap(Map<?, ?> map) {
+            writeByte(MAP);
+            writeVarint(map.size());
+
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                Integer id = FIELD_IDS.get(key);
+
+                if (id != null) {
+                    writeVarint(id);
+                } else {
+                    writeVarint(0);
+                    writeString(key);
+                }
+
+                writeValue(entry.getValue());
+            }
+        }
+
+        private void writeList(Collection<?> list) {
+            writeByte(LIST);
+            writeVarint(list.size());
+
+            for (Object item : list) {
+                writeValue(item);
+            }
+        }
+
+        private void writeJson(Object value) {
+            byte[] json;
+            try {
+                json = mapper.writeValueAsBytes(value);
+            } catch (IOException e) {
+                throw new SamzaException("Couldn't write " + value.getClass().getName() + " to a store", e);
+            }
+
+            writeByte(JSON);
+            writeVarint(json.length);
+            ensure(json.length);
+            System.arraycopy(json, 0, buffer, size, json.length);
+            size += json.length;
+        }
+
+        private void writeString(String value) {
+            int length = value.length();
+            ensure(length + 5);
+
+            // Most values are ASCII, they are copied without encoding
+            int start = size;
+            writeVarint(length);
+            int data = size;
+
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+
+                if (c >= 0x80) {
+                    byte[] bytes = value.getBytes(UTF8);
+                    size = start;
+                    writeVarint(bytes.length);
+                    ensure(bytes.length);
+                    System.arraycopy(bytes, 0, buffer, size, bytes.length);
+                    size += bytes.length;
+                    return;
+                }
+
+                buffer[data + i] = (byte) c;
+            }
+
+            size = data + length;
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            buffer[size++] = (byte) value;
+        }
+
+        private void writeFixed(long value, int bytes) {
+            ensure(bytes);
+
+            for (int shift = (bytes - 1) * 8; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        private void ensure(int bytes) {
+            if (size + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int pos = 1;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        Object readValue() {
+            int type = readByte();
+
+            switch (type) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case INT:
+                    return (int) unzigzag(readVarint());
+                case LONG:
+                    return unzigzag(readVarint());
+                case FLOAT:
+                    return Float.intBitsToFloat((int) readFixed(4));
+                case DOUBLE:
+                    return Double.longBitsToDouble(readFixed(8));
+                case STRING:
+                    return readString();
+                case MAP:
+                    return readMap();
+                case LIST:
+                    return readList();
+                case JSON:
+                    int length = readLength();
+                    Object value = fromJson(bytes, pos, length);
+                    pos += length;
+                    return value;
+                default:
+                    throw new SamzaException("Unknown store value type " + type + " at " + (pos - 1));
+            }
+        }
+
+        private Map<String, Object> readMap() {
+            int entries = readLength();
+            Map<String, Object> map = new HashMap<>(entries * 4 / 3 + 1);
+
+            for (int i = 0; i < entries; i++) {
+                int id = (int) readVarint();
+                String key;
+
+                if (id == 0) {
+                    key = readString();
+                } else if (id <= FIELDS.length) {
+                    key = FIELDS[id - 1];
+                } else {
+                    throw new SamzaException("Unknown store value field " + id);
+                }
+
+                map.put(key, readValue());
+            }
+
+            return map;
+        }
+
+        private List<Object> readList() {
+            int items = readLength();
+            List<Object> list = new ArrayList<>(items);
+
+            for (int i = 0; i < items; i++) {
+                list.add(readValue());
+            }
+
+            return list;
+        }
+
+        private String readString() {
+            int length = readLength();
+            String value = new String(bytes, pos, length, UTF8);
+            pos += length;
+            return value;
+        }
+
+        private int readLength() {
+            long length = readVarint();
+            if (length > bytes.length - pos) throw new SamzaException("Truncated store value");
+            return (int) length;
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readVarint() {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+
+            throw new SamzaException("Malformed store value");
+        }
+
+        private long readFixed(int count) {
+            long value = 0;
+
+            for (int i = 0; i < count; i++) {
+                value = (value << 8) | readByte();
+            }
+
+            return value;
+        }
+
+        private int readByte() {
+            if (pos >= bytes.length) throw new SamzaException("Truncated store value");
+            return bytes[pos++] & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package net.redborder.samza.serializers;
+
+import org.apache.samza.config.Config;
+import org.apache.samza.serializers.Serde;
+import org.apache.samza.serializers.SerdeFactory;
+
+public class StoreValueSerdeFactory implements SerdeFactory<Object> {
+    @Override
+    public Serde<Object> getSerde(String name, Config config) {
+        return new StoreValueSerde();
+    }
+}
@@ -0,0 +1,137 @@
+package net.redborder.samza.store;
+
+import net.redborder.samza.enrichments.MacScramblingEnrich;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the keys of a store from its key fields, reusing the same buffer for
+ * every key. The legacy format concatenates the fields that are present, so a
+ * missing field and an empty one give the same key, and so can different fields.
+ * The compact format writes every field behind a marker: MACs as their 6 bytes
+ * and UUIDs as their 16 bytes, both in URL safe base64, other values as their
+ * length and text, and missing or empty fields as the marker alone. It changes
+ * the keys of the store, so it must only be enabled on empty stores.
+ * Not thread safe, every task has its own.
+ */
+public class KeyEncoder {
+    public static final String LEGACY = "legacy";
+    public static final String COMPACT = "compact";
+
+    private static final char[] DIGITS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final char NULL_MARKER = '~';
+    private static final char MAC_MARKER = 'm';
+    private static final char UUID_MARKER = 'u';
+    private static final char TEXT_MARKER = 's';
+
+    private final String[] fields;
+    private final boolean compact;
+    private final StringBuilder builder = new StringBuilder(64);
+
+    /**
+     * @param fields fields of the message that make up the key, in order
+     * @param format LEGACY or COMPACT, null is LEGACY
+     */
+    public KeyEncoder(List<String> fields, String format) {
+        if (format != null && !format.equals(LEGACY) && !format.equals(COMPACT)) {
+            throw new IllegalArgumentException("Unknown store key format " + format);
+        }
+
+        this.fields = fields.toArray(new String[fields.size()]);
+        this.compact = COMPACT.equals(format);
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Key of the message, built from its key fields.
+     */
+    public String encode(Map<String, Object> message) {
+        builder.setLength(0);
+
+        for (String field : fields) {
+            append(message.get(field));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Key made of the given values of the key fields, in order. Missing trailing
+     * values are taken as missing fields.
+     */
+    public String encode(Object... values) {
+        builder.setLength(0);
+
+        for (int i = 0; i < Math.max(values.length, fields.length); i++) {
+            append(i < values.length ? values[i] : null);
+        }
+
+        return builder.toString();
+    }
+
+    private void append(Object value) {
+        if (!compact) {
+            if (value != null) builder.append(value);
+            return;
+        }
+
+        String text = value == null ? "" : value.toString();
+
+        if (text.isEmpty()) {
+            builder.append(NULL_MARKER);
+            return;
+        }
+
+        long mac = MacScramblingEnrich.parseMac(text);
+
+        if (mac >= 0) {
+            builder.append(MAC_MARKER);
+            appendBase64(mac, 8);
+        } else if (isUuid(text)) {
+            builder.append(UUID_MARKER);
+            appendBase64(parseHex(text, 0, 18), 11);
+            appendBase64(parseHex(text, 19, 36), 11);
+        } else {
+            builder.append(TEXT_MARKER).append(text.length()).append(':').append(text);
+        }
+    }
+
+    private void appendBase64(long value, int chars) {
+        for (int shift = (chars - 1) * 6; shift >= 0; shift -= 6) {
+            builder.append(DIGITS[(int) (value >>> shift) & 63]);
+        }
+    }
+
+    private static boolean isUuid(String text) {
+        if (text.length() != 36) return false;
+
+        for (int i = 0; i < 36; i++) {
+            char c = text.charAt(i);
+
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return false;
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Hex digits between the given positions, skipping dashes
+    private static long parseHex(String text, int from, int to) {
+        long value = 0;
+
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c != '-') value = (value << 4) | Character.digit(c, 16);
+        }
+
+        return value;
+    }
+}
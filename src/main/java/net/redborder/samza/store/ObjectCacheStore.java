@@ -0,0 +1,170 @@
+package net.redborder.samza.store;
+
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.Gauge;
+import org.apache.samza.storage.kv.Entry;
+import org.apache.samza.storage.kv.KeyValueIterator;
+import org.apache.samza.storage.kv.KeyValueStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded write-through cache of deserialized values in front of a store. Lookups
+ * that hit it skip the store and its serde, and lookups of missing keys are
+ * cached too. Every write must go through this cache to keep it coherent with
+ * the store, and values must not be modified once they are stored or read.
+ * Not thread safe, every task has its own.
+ */
+public class ObjectCacheStore<V> implements KeyValueStore<String, V> {
+    private static final Object ABSENT = new Object();
+    private static final int RATIO_INTERVAL = 1024;
+
+    private final KeyValueStore<String, V> store;
+    private final Map<String, Object> cache;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Gauge<Double> hitRatio;
+    private long lookups;
+    private long lookupHits;
+
+    public ObjectCacheStore(KeyValueStore<String, V> store, final int capacity,
+                            Counter hits, Counter misses, final Counter evictions, Gauge<Double> hitRatio) {
+        this.store = store;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.hitRatio = hitRatio;
+        this.cache = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                if (size() > capacity) {
+                    evictions.inc();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(String key) {
+        Object value = cache.get(key);
+
+        if (value != null) {
+            count(true);
+            return value == ABSENT ? null : (V) value;
+        }
+
+        count(false);
+        V stored = store.get(key);
+        cache.put(key, stored == null ? ABSENT : stored);
+        return stored;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<String, V> getAll(List<String> keys) {
+        Map<String, V> values = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+
+        for (String key : keys) {
+            Object value = cache.get(key);
+
+            if (value == null) {
+                count(false);
+                missing.add(key);
+            } else {
+                count(true);
+                if (value != ABSENT) values.put(key, (V) value);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, V> stored = store.getAll(missing);
+
+            for (String key : missing) {
+                V value = stored == null ? null : stored.get(key);
+                cache.put(key, value == null ? ABSENT : value);
+                if (value != null) values.put(key, value);
+            }
+        }
+
+        return values;
+    }
+
+    private void count(boolean hit) {
+        if (hit) {
+            hits.inc();
+            lookupHits++;
+        } else {
+            misses.inc();
+        }
+
+        if (++lookups % RATIO_INTERVAL == 0) {
+            hitRatio.set((double) lookupHits / lookups);
+        }
+    }
+
+    @Override
+    public void put(String key, V value) {
+        store.put(key, value);
+        cache.put(key, value == null ? ABSENT : value);
+    }
+
+    @Override
+    public void putAll(List<Entry<String, V>> entries) {
+        store.putAll(entries);
+
+        for (Entry<String, V> entry : entries) {
+            V value = entry.getValue();
+            cache.put(entry.getKey(), value == null ? ABSENT : value);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        store.delete(key);
+        cache.put(key, ABSENT);
+    }
+
+    @Override
+    public void deleteAll(List<String> keys) {
+        store.deleteAll(keys);
+
+        for (String key : keys) {
+            cache.put(key, ABSENT);
+        }
+    }
+
+    @Override
+    public KeyValueIterator<String, V> range(String from, String to) {
+        return store.range(from, to);
+    }
+
+    @Override
+    public KeyValueIterator<String, V> all() {
+        return store.all();
+    }
+
+    @Override
+    public void close() {
+        cache.clear();
+        store.close();
+    }
+
+    @Override
+    public void flush() {
+        store.flush();
+    }
+}
@@ -0,0 +1,51 @@
+package net.redborder.samza.store;
+
+import org.apache.samza.SamzaException;
+import org.apache.samza.config.Config;
+import org.apache.samza.container.SamzaContainerContext;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.serializers.Serde;
+import org.apache.samza.storage.StorageEngine;
+import org.apache.samza.storage.StorageEngineFactory;
+import org.apache.samza.storage.kv.RocksDbKeyValueStorageEngineFactory;
+import org.apache.samza.system.SystemStreamPartition;
+import org.apache.samza.task.MessageCollector;
+
+import java.io.File;
+
+/**
+ * Storage engine factory that restores the changelog of every store on its own
+ * thread. The container keeps reading the changelogs one after another, but the
+ * writes of each one go on while the next ones are read, and the first access to
+ * a store waits until its restore is complete. The engines themselves are built
+ * by another factory, RocksDB unless redborder.store.&lt;store&gt;.restore.factory
+ * says otherwise, and restore in batches of redborder.store.&lt;store&gt;.restore.batch.size
+ * changelog messages.
+ */
+public class ParallelRestoreStorageEngineFactory<K, V> implements StorageEngineFactory<K, V> {
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public StorageEngine getStorageEngine(String storeName, File storeDir, Serde<K> keySerde, Serde<V> msgSerde,
+                                          MessageCollector collector, MetricsRegistry registry,
+                                          SystemStreamPartition changeLogSystemStreamPartition,
+                                          SamzaContainerContext containerContext) {
+        Config config = containerContext.config;
+        String prefix = "redborder.store." + storeName + ".restore.";
+        String factoryClass = config.get(prefix + "factory", RocksDbKeyValueStorageEngineFactory.class.getName());
+        StorageEngineFactory<K, V> factory;
+
+        try {
+            factory = (StorageEngineFactory<K, V>) Class.forName(factoryClass).newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new SamzaException("Couldn't create the storage engine factory " + factoryClass, e);
+        }
+
+        StorageEngine engine = factory.getStorageEngine(storeName, storeDir, keySerde, msgSerde, collector, registry,
+                changeLogSystemStreamPartition, containerContext);
+
+        return new RestoringStorageEngine<>(storeName, engine, config.getInt(prefix + "batch.size", DEFAULT_BATCH_SIZE),
+                registry);
+    }
+}
@@ -0,0 +1,251 @@
+package net.redborder.samza.store;
+
+import org.apache.samza.SamzaException;
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.Gauge;
+import org.apache.samza.metrics.MetricsRegistry;
+import org.apache.samza.storage.StorageEngine;
+import org.apache.samza.storage.kv.Entry;
+import org.apache.samza.storage.kv.KeyValueIterator;
+import org.apache.samza.storage.kv.KeyValueStore;
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key-value storage engine that hands the changelog messages to restore to a
+ * thread of its own, so restore returns as soon as the changelog is read. Every
+ * other method waits until the restore is complete. Restored messages, bytes and
+ * the last restored offset are exported while restoring, and the duration and
+ * throughput when done.
+ */
+class RestoringStorageEngine<K, V> implements StorageEngine, KeyValueStore<K, V> {
+    private static final Logger log = LoggerFactory.getLogger(RestoringStorageEngine.class);
+    private static final List<IncomingMessageEnvelope> END = Collections.emptyList();
+    private static final int QUEUED_BATCHES = 16;
+    private static final long PROGRESS_INTERVAL = 1000000;
+
+    private final String name;
+    private final StorageEngine engine;
+    private final KeyValueStore<K, V> store;
+    private final int batchSize;
+    private final Counter messages;
+    private final Counter bytes;
+    private final Gauge<String> offset;
+    private final Gauge<Long> millis;
+    private final Gauge<Long> messagesPerSecond;
+
+    private volatile boolean restored = true;
+    private volatile Throwable failure;
+    private volatile CountDownLatch done = new CountDownLatch(0);
+
+    @SuppressWarnings("unchecked")
+    RestoringStorageEngine(String name, StorageEngine engine, int batchSize, MetricsRegistry registry) {
+        if (!(engine instanceof KeyValueStore)) {
+            throw new SamzaException("The store " + name + " is not a key-value store");
+        }
+
+        String group = ParallelRestoreStorageEngineFactory.class.getName();
+        this.name = name;
+        this.engine = engine;
+        this.store = (KeyValueStore<K, V>) engine;
+        this.batchSize = batchSize;
+        this.messages = registry.newCounter(group, name + "-restored-messages");
+        this.bytes = registry.newCounter(group, name + "-restored-bytes");
+        this.offset = registry.newGauge(group, name + "-restored-offset", "");
+        this.millis = registry.newGauge(group, name + "-restore-ms", 0L);
+        this.messagesPerSecond = registry.newGauge(group, name + "-restore-messages-per-sec", 0L);
+    }
+
+    @Override
+    public void restore(Iterator<IncomingMessageEnvelope> envelopes) {
+        awaitRestore();
+
+        final BlockingQueue<List<IncomingMessageEnvelope>> batches = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        final CountDownLatch writing = new CountDownLatch(1);
+        done = writing;
+        restored = false;
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(batches);
+                } catch (Throwable e) {
+                    failure = e;
+                    log.error("Couldn't restore the store " + name, e);
+                } finally {
+                    writing.countDown();
+                }
+            }
+        }, "restore-" + name);
+        writer.setDaemon(true);
+        writer.start();
+
+        List<IncomingMessageEnvelope> batch = new ArrayList<>(batchSize);
+
+        while (envelopes.hasNext()) {
+            batch.add(envelopes.next());
+
+            if (batch.size() >= batchSize) {
+                enqueue(batches, batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+
+        if (!batch.isEmpty()) enqueue(batches, batch);
+        enqueue(batches, END);
+    }
+
+    // Blocks while the writer is behind, unless it has failed
+    private void enqueue(BlockingQueue<List<IncomingMessageEnvelope>> batches, List<IncomingMessageEnvelope> batch) {
+        try {
+            while (!batches.offer(batch, 1, TimeUnit.SECONDS)) {
+                if (done.getCount() == 0) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SamzaException("Interrupted while restoring the store " + name, e);
+        }
+    }
+
+    private void write(BlockingQueue<List<IncomingMessageEnvelope>> batches) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long restoredMessages = 0;
+        long nextProgress = PROGRESS_INTERVAL;
+
+        while (true) {
+            List<IncomingMessageEnvelope> batch = batches.take();
+            if (batch == END) break;
+
+            engine.restore(batch.iterator());
+
+            long batchBytes = 0;
+            for (IncomingMessageEnvelope envelope : batch) {
+                batchBytes += size(envelope.getKey()) + size(envelope.getMessage());
+            }
+
+            restoredMessages += batch.size();
+            messages.inc(batch.size());
+            bytes.inc(batchBytes);
+            offset.set(batch.get(batch.size() - 1).getOffset());
+
+            if (restoredMessages >= nextProgress) {
+                log.info("Restored {} messages of the store {} at {} messages/s", restoredMessages, name,
+                        rate(restoredMessages, start));
+                nextProgress += PROGRESS_INTERVAL;
+            }
+        }
+
+        millis.set(System.currentTimeMillis() - start);
+        messagesPerSecond.set(rate(restoredMessages, start));
+        log.info("Restored {} messages of the store {} in {} ms", restoredMessages, name, millis.getValue());
+    }
+
+    private static long size(Object bytes) {
+        return bytes instanceof byte[] ? ((byte[]) bytes).length : 0;
+    }
+
+    private static long rate(long count, long start) {
+        return count * 1000 / Math.max(1, System.currentTimeMillis() - start);
+    }
+
+    private void awaitRestore() {
+        if (restored) return;
+
+        awaitWriter();
+
+        if (failure != null) {
+            throw new SamzaException("Couldn't restore the store " + name, failure);
+        }
+
+        restored = true;
+    }
+
+    private void awaitWriter() {
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SamzaException("Interrupted while waiting for the store " + name, e);
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        awaitRestore();
+        return store.get(key);
+    }
+
+    @Override
+    public Map<K, V> getAll(List<K> keys) {
+        awaitRestore();
+        return store.getAll(keys);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        awaitRestore();
+        store.put(key, value);
+    }
+
+    @Override
+    public void putAll(List<Entry<K, V>> entries) {
+        awaitRestore();
+        store.putAll(entries);
+    }
+
+    @Override
+    public void delete(K key) {
+        awaitRestore();
+        store.delete(key);
+    }
+
+    @Override
+    public void deleteAll(List<K> keys) {
+        awaitRestore();
+        store.deleteAll(keys);
+    }
+
+    @Override
+    public KeyValueIterator<K, V> range(K from, K to) {
+        awaitRestore();
+        return store.range(from, to);
+    }
+
+    @Override
+    public KeyValueIterator<K, V> all() {
+        awaitRestore();
+        return store.all();
+    }
+
+    @Override
+    public void flush() {
+        awaitRestore();
+        engine.flush();
+    }
+
+    @Override
+    public void stop() {
+        // A failed restore is reported by the first access, the engine is stopped anyway
+        awaitWriter();
+        engine.stop();
+    }
+
+    @Override
+    public void close() {
+        // Like stop, the store is closed even if its restore failed
+        awaitWriter();
+        store.close();
+    }
+}
@@ -2,6 +2,7 @@ package net.redborder.samza.store;
 
 import net.redborder.samza.util.PostgresqlManager;
 import org.apache.samza.config.Config;
+import org.apache.samza.metrics.MetricsRegistry;
 import org.apache.samza.storage.kv.KeyValueStore;
 import org.apache.samza.task.TaskContext;
 import org.slf4j.Logger;
@@ -13,9 +14,10 @@ import static net.redborder.samza.util.constants.Dimension.*;
 
 public class StoreManager {
 
-    private static Map<String, Store> stores = new LinkedHashMap<>();
     private static final Logger log = LoggerFactory.getLogger(StoreManager.class);
+    private Map<String, Store> stores = new LinkedHashMap<>();
     private List<String> storesList;
+    private final KeyEncoder legacyKeys = new KeyEncoder(Collections.<String>emptyList(), KeyEncoder.LEGACY);
 
     public StoreManager(Config config, TaskContext context) {
         storesList = config.getList("redborder.stores", Collections.<String>emptyList());
@@ -25,14 +27,35 @@ public class StoreManager {
             if (!stores.containsKey(store)) {
                 Store storeData = new Store();
                 storeData.setKeys(config.getList("redborder.store." + store + ".keys", Arrays.asList(CLIENT_MAC, NAMESPACE_UUID)));
+                storeData.setKeyEncoder(new KeyEncoder(storeData.getKeys(),
+                        config.get("redborder.store." + store + ".key.format", KeyEncoder.LEGACY)));
                 storeData.setOverwrite(config.getBoolean("redborder.store." + store + ".overwrite", true));
-                storeData.setStore((KeyValueStore<String, Map<String, Object>>) context.getStore(store));
+                storeData.setStore(cached(store, (KeyValueStore<String, Map<String, Object>>) context.getStore(store),
+                        config.getInt("redborder.store." + store + ".cache.size", 0), context));
                 log.info("  * Store: {} {}", store, storeData.toString());
                 stores.put(store, storeData);
             }
         }
     }
 
+    /**
+     * Puts a cache of the given number of deserialized values in front of the store,
+     * if it is above zero.
+     */
+    private KeyValueStore<String, Map<String, Object>> cached(String store, KeyValueStore<String, Map<String, Object>> keyValueStore,
+                                                              int cacheSize, TaskContext context) {
+        if (keyValueStore == null || cacheSize <= 0) return keyValueStore;
+
+        MetricsRegistry metrics = context.getMetricsRegistry();
+        String group = getClass().getName();
+
+        return new ObjectCacheStore<>(keyValueStore, cacheSize,
+                metrics.newCounter(group, store + "-cache-hits"),
+                metrics.newCounter(group, store + "-cache-misses"),
+                metrics.newCounter(group, store + "-cache-evictions"),
+                metrics.newGauge(group, store + "-cache-hit-ratio", 0.0));
+    }
+
     public KeyValueStore<String, Map<String, Object>> getStore(String store) {
         Store storeData = stores.get(store);
         KeyValueStore<String, Map<String, Object>> keyValueStore = null;
@@ -44,6 +67,17 @@ public class StoreManager {
         return keyValueStore;
     }
 
+    /**
+     * Key of the given store made of the given values of its key fields, in order.
+     * Stores must be written with these keys to be found by enrich.
+     */
+    public String key(String store, Object... values) {
+        Store storeData = stores.get(store);
+        KeyEncoder encoder = storeData == null ? legacyKeys : storeData.getKeyEncoder();
+
+        return encoder.encode(values);
+    }
+
     public boolean hasOverwriteEnabled(String store) {
         Store storeData = stores.get(store);
         boolean overwrite = true;
@@ -55,106 +89,149 @@ public class StoreManager {
         return overwrite;
     }
 
+    /**
+     * Merges the contents found on every configured store into the message itself,
+     * honouring the overwrite flag of each store, and returns the same message.
+     */
     public Map<String, Object> enrich(Map<String, Object> message) {
-        Map<String, Object> enrichment = new HashMap<>(message);
+        Object namespace = message.get(NAMESPACE_UUID);
 
         for (String store : storesList) {
-            if (store.equals(PostgresqlManager.SENSOR_PSQL_STORE) || store.equals(PostgresqlManager.WLC_PSQL_STORE)) {
-                Store storeData = stores.get(store);
-                List<String> keys = storeData.getKeys();
-                Object namespace = message.get(NAMESPACE_UUID);
+            Store storeData = stores.get(store);
+            List<String> keys = storeData.getKeys();
+            String mergeKey = storeData.getKeyEncoder().encode(message);
+            KeyValueStore<String, Map<String, Object>> keyValueStore = storeData.getStore();
+            Map<String, Object> contents = keyValueStore.get(mergeKey);
 
-                StringBuilder builder = new StringBuilder();
+            if (isPostgresql(store)) {
+                if (contents == null) {
+                    Object key = message.get(keys.get(0));
 
-                for (String key : keys) {
-                    Object kv = enrichment.get(key);
-                    if (kv != null) {
-                        builder.append(kv);
+                    if (key != null) {
+                        contents = keyValueStore.get(storeData.getKeyEncoder().encode(key));
                     }
                 }
 
-                String mergeKey = builder.toString();
-                KeyValueStore<String, Map<String, Object>> keyValueStore = storeData.getStore();
-                Map<String, Object> contents = keyValueStore.get(mergeKey);
+                contents = inNamespace(namespace, contents);
+            } else {
+                log.debug("msgType: " + message.get(TYPE) + " store: " + store + " key: " + message.get(keys.get(0)) + " mergeKey: {} - contents: {}", mergeKey, contents);
+            }
 
-                if (contents == null) {
-                    Object key = enrichment.get(keys.get(0));
+            if (contents != null) {
+                merge(message, contents, storeData.mustOverwrite());
+            }
+        }
 
-                    if (key != null) {
-                        contents = keyValueStore.get(key.toString());
-                    }
+        return message;
+    }
+
+    /**
+     * Enriches every message like enrich does, but reads the keys of all of them
+     * from each store at once. The messages must be enriched together only if no
+     * store is written in between, the results are the same.
+     */
+    public List<Map<String, Object>> enrichAll(List<Map<String, Object>> messages) {
+        int count = messages.size();
+
+        if (count == 1) {
+            enrich(messages.get(0));
+            return messages;
+        }
+
+        Object[] namespaces = new Object[count];
+        for (int i = 0; i < count; i++) {
+            namespaces[i] = messages.get(i).get(NAMESPACE_UUID);
+        }
+
+        String[] mergeKeys = new String[count];
+        String[] fallbackKeys = new String[count];
+
+        // Store by store, because the keys of a store can come from the contents of earlier ones
+        for (String store : storesList) {
+            Store storeData = stores.get(store);
+            KeyEncoder encoder = storeData.getKeyEncoder();
+            KeyValueStore<String, Map<String, Object>> keyValueStore = storeData.getStore();
+
+            for (int i = 0; i < count; i++) {
+                mergeKeys[i] = encoder.encode(messages.get(i));
+            }
+
+            Map<String, Map<String, Object>> contents = getAll(keyValueStore, mergeKeys);
+            Map<String, Map<String, Object>> fallbackContents = null;
+
+            if (isPostgresql(store)) {
+                String firstKey = storeData.getKeys().get(0);
+
+                for (int i = 0; i < count; i++) {
+                    Object key = messages.get(i).get(firstKey);
+                    fallbackKeys[i] = contents.get(mergeKeys[i]) == null && key != null ? encoder.encode(key) : null;
                 }
 
-                if (contents != null) {
-                    String psqlNamespace = (String) contents.get(NAMESPACE_UUID);
-                    if (namespace != null && psqlNamespace != null) {
-                        if(namespace.equals(psqlNamespace)){
-                            if (storeData.mustOverwrite()) {
-                                enrichment.putAll(contents);
-                            } else {
-                                Map<String, Object> newData = new HashMap<>();
-                                newData.putAll(contents);
-                                newData.putAll(enrichment);
-                                enrichment = newData;
-                            }
-                        }
-                    } else {
-                        if (storeData.mustOverwrite()) {
-                            enrichment.putAll(contents);
-                        } else {
-                            Map<String, Object> newData = new HashMap<>();
-                            newData.putAll(contents);
-                            newData.putAll(enrichment);
-                            enrichment = newData;
-                        }
-                    }
+                fallbackContents = getAll(keyValueStore, fallbackKeys);
+            }
+
+            for (int i = 0; i < count; i++) {
+                Map<String, Object> found = contents.get(mergeKeys[i]);
+
+                if (fallbackContents != null) {
+                    if (found == null && fallbackKeys[i] != null) found = fallbackContents.get(fallbackKeys[i]);
+                    found = inNamespace(namespaces[i], found);
                 }
-            } else {
-                Store storeData = stores.get(store);
-                List<String> keys = storeData.getKeys();
-                StringBuilder builder = new StringBuilder();
-
-                for (String key : keys) {
-                    Object kv = enrichment.get(key);
-                    if (kv != null) {
-                        builder.append(kv);
-                    }
+
+                if (found != null) {
+                    merge(messages.get(i), found, storeData.mustOverwrite());
                 }
+            }
+        }
 
+        return messages;
+    }
 
-                String mergeKey = builder.toString();
-                KeyValueStore<String, Map<String, Object>> keyValueStore = storeData.getStore();
-                Map<String, Object> contents = keyValueStore.get(mergeKey);
+    private static Map<String, Map<String, Object>> getAll(KeyValueStore<String, Map<String, Object>> keyValueStore,
+                                                           String[] keys) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String key : keys) {
+            if (key != null) distinct.add(key);
+        }
 
-                /*if (contents == null) {
-                    Object key = enrichment.get(keys.get(0));
+        if (distinct.isEmpty()) return Collections.emptyMap();
 
-                    if (key != null) {
-                        contents = keyValueStore.get(key.toString());
-                    }
-                }*/
-
-                log.debug("msgType: " + message.get(TYPE) + " store: " + store + " key: " + enrichment.get(keys.get(0)) + " mergeKey: {} - contents: {}", mergeKey, contents);
-
-                if (contents != null) {
-                    if (storeData.mustOverwrite()) {
-                        enrichment.putAll(contents);
-                    } else {
-                        Map<String, Object> newData = new HashMap<>();
-                        newData.putAll(contents);
-                        newData.putAll(enrichment);
-                        enrichment = newData;
-                    }
-                }
+        Map<String, Map<String, Object>> contents = keyValueStore.getAll(new ArrayList<>(distinct));
+        return contents == null ? Collections.<String, Map<String, Object>>emptyMap() : contents;
+    }
+
+    private static boolean isPostgresql(String store) {
+        return store.equals(PostgresqlManager.SENSOR_PSQL_STORE) || store.equals(PostgresqlManager.WLC_PSQL_STORE);
+    }
+
+    // Contents of postgresql that belong to another namespace than the message are ignored
+    private static Map<String, Object> inNamespace(Object namespace, Map<String, Object> contents) {
+        if (contents != null) {
+            String psqlNamespace = (String) contents.get(NAMESPACE_UUID);
+            if (namespace != null && psqlNamespace != null && !namespace.equals(psqlNamespace)) {
+                return null;
             }
         }
 
-        return enrichment;
+        return contents;
+    }
+
+    private void merge(Map<String, Object> message, Map<String, Object> contents, boolean overwrite) {
+        if (overwrite) {
+            message.putAll(contents);
+        } else {
+            for (Map.Entry<String, Object> entry : contents.entrySet()) {
+                if (!message.containsKey(entry.getKey())) {
+                    message.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
     }
 
     private class Store {
         private List<String> keys;
         private boolean overwrite;
+        private KeyEncoder keyEncoder;
         private KeyValueStore<String, Map<String, Object>> store;
 
         public void setStore(KeyValueStore<String, Map<String, Object>> store) {
@@ -169,6 +246,10 @@ public class StoreManager {
             this.overwrite = overwrite;
         }
 
+        public void setKeyEncoder(KeyEncoder keyEncoder) {
+            this.keyEncoder = keyEncoder;
+        }
+
         public KeyValueStore<String, Map<String, Object>> getStore() {
             return store;
         }
@@ -177,6 +258,10 @@ public class StoreManager {
             return keys;
         }
 
+        public KeyEncoder getKeyEncoder() {
+            return keyEncoder;
+        }
+
         public boolean mustOverwrite() {
             return overwrite;
         }
@@ -185,7 +270,8 @@ public class StoreManager {
         public String toString() {
             return new StringBuffer()
                     .append("KEYS: ").append(keys).append(" ")
-                    .append("OVERWRITE: ").append(overwrite).toString();
+                    .append("OVERWRITE: ").append(overwrite).append(" ")
+                    .append("KEY FORMAT: ").append(keyEncoder.isCompact() ? KeyEncoder.COMPACT : KeyEncoder.LEGACY).toString();
         }
     }
 }
@@ -1,6 +1,6 @@
 package net.redborder.samza.tasks;
 
-import net.redborder.samza.processors.Processor;
+import net.redborder.samza.processors.ProcessorPipeline;
 import net.redborder.samza.store.StoreManager;
 import net.redborder.samza.util.PostgresqlManager;
 import org.apache.samza.config.Config;
@@ -11,14 +11,12 @@ import org.apache.samza.storage.kv.KeyValueStore;
 import org.apache.samza.system.IncomingMessageEnvelope;
 import org.apache.samza.system.OutgoingMessageEnvelope;
 import org.apache.samza.system.SystemStream;
+import org.apache.samza.system.SystemStreamPartition;
 import org.apache.samza.task.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class EnrichmentStreamTask implements StreamTask, InitableTask, WindowableTask {
     private static final Logger log = LoggerFactory.getLogger(EnrichmentStreamTask.class);
@@ -32,6 +30,8 @@ public class EnrichmentStreamTask implements StreamTask, InitableTask, Windowabl
     private KeyValueStore<String, Long> flowsNumberStore;
     private final Integer FIVE_MINUTES = 5;
     private Integer windowTimes = 0;
+    private SystemStreamPartition[] partitions;
+    private ProcessorPipeline[] pipelines;
 
 
     @Override
@@ -60,19 +60,62 @@ public class EnrichmentStreamTask implements StreamTask, InitableTask, Windowabl
 
         countersStore.deleteAll(toDelete2);
 
+        buildPipelines(context.getSystemStreamPartitions());
+    }
+
+    private void buildPipelines(Set<SystemStreamPartition> systemStreamPartitions) {
+        Map<String, ProcessorPipeline> streamPipelines = new HashMap<>();
+        List<SystemStreamPartition> partitionsList = new ArrayList<>(systemStreamPartitions);
+
+        partitions = new SystemStreamPartition[partitionsList.size()];
+        pipelines = new ProcessorPipeline[partitionsList.size()];
+
+        for (int i = 0; i < partitionsList.size(); i++) {
+            SystemStreamPartition partition = partitionsList.get(i);
+            String stream = partition.getStream();
+            ProcessorPipeline pipeline = streamPipelines.get(stream);
+
+            if (pipeline == null) {
+                pipeline = ProcessorPipeline.build(stream, config, context, storeManager, postgresqlManager);
+                streamPipelines.put(stream, pipeline);
+                log.info("Built pipeline for stream {} with {} processors", stream, pipeline.size());
+            }
+
+            partitions[i] = partition;
+            pipelines[i] = pipeline;
+        }
+    }
+
+    private ProcessorPipeline getPipeline(SystemStreamPartition partition) {
+        // Samza usually hands us the same partition instance for every envelope, so try
+        // the identity check first and only fall back to equals() once per instance.
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i] == partition) return pipelines[i];
+        }
+
+        for (int i = 0; i < partitions.length; i++) {
+            if (partitions[i].equals(partition)) {
+                partitions[i] = partition;
+                return pipelines[i];
+            }
+        }
+
+        log.warn("Received a message from an unexpected partition {}, building its pipeline", partition);
+        ProcessorPipeline pipeline = ProcessorPipeline.build(partition.getStream(), config, context, storeManager, postgresqlManager);
+        partitions = Arrays.copyOf(partitions, partitions.length + 1);
+        pipelines = Arrays.copyOf(pipelines, pipelines.length + 1);
+        partitions[partitions.length - 1] = partition;
+        pipelines[pipelines.length - 1] = pipeline;
+
+        return pipeline;
     }
 
     @Override
     public void process(IncomingMessageEnvelope envelope, MessageCollector collector, TaskCoordinator coordinator) throws Exception {
-        String stream = envelope.getSystemStreamPartition().getSystemStream().getStream();
         Object message = envelope.getMessage();
 
-
-        List<Processor> processors = Processor.getProcessors(stream, this.config, this.context, this.storeManager, this.postgresqlManager);
         if (message instanceof Map) {
-            for(Processor processor : processors) {
-                processor.process(stream, message, collector);
-            }
+            getPipeline(envelope.getSystemStreamPartition()).process(message, collector);
             counter.inc();
         } else {
             log.warn("This message is not a map class: " + message);
@@ -0,0 +1,70 @@
+package net.redborder.samza.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background thread of the container that loads shared files and checks them for
+ * changes, so tasks never wait for it.
+ */
+public final class FileWatcher {
+    private static final Logger log = LoggerFactory.getLogger(FileWatcher.class);
+
+    private static ScheduledExecutorService executor;
+
+    private FileWatcher() {
+    }
+
+    private static synchronized ScheduledExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "file-watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return executor;
+    }
+
+    /**
+     * Runs the task once now and then every intervalSeconds. Errors are logged and
+     * do not stop later runs.
+     */
+    public static void watch(final String name, final Runnable task, long intervalSeconds) {
+        executor().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.error("Couldn't check " + name, e);
+                }
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Modification time and length of every file, to tell whether any of them changed.
+     */
+    public static long[] stamps(String... paths) {
+        long[] stamps = new long[paths.length * 2];
+
+        for (int i = 0; i < paths.length; i++) {
+            File file = new File(paths[i]);
+            stamps[i * 2] = file.lastModified();
+            stamps[i * 2 + 1] = file.length();
+        }
+
+        return stamps;
+    }
+}
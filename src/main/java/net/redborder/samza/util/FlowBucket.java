@@ -0,0 +1,228 @@
+package net.redborder.samza.util;
+
+import net.redborder.samza.util.constants.Dimension;
+
+import java.util.*;
+
+/**
+ * Minute bucket of a split flow. It is a view over the flow it came from that
+ * overrides timestamp, bytes and pkts, hides first_switched and only shows the
+ * duration on the first bucket, so every bucket of a flow shares the same
+ * enriched dimensions instead of copying them. The flow must not be modified
+ * while its buckets are in use.
+ *
+ * Writing into a bucket detaches it from the flow by copying its dimensions.
+ */
+public class FlowBucket extends AbstractMap<String, Object> {
+    private final Map<String, Object> parent;
+    private final long timestamp;
+    private final long bytes;
+    private final long pkts;
+    private final boolean withDuration;
+
+    // Own copy of the dimensions once the bucket has been written
+    private Map<String, Object> detached;
+
+    private transient Set<Entry<String, Object>> entrySet;
+
+    public FlowBucket(Map<String, Object> parent, long timestamp, long bytes, long pkts, boolean withDuration) {
+        this.parent = parent;
+        this.timestamp = timestamp;
+        this.bytes = bytes;
+        this.pkts = pkts;
+        this.withDuration = withDuration;
+    }
+
+    public Map<String, Object> parent() {
+        return parent;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+
+    public long pkts() {
+        return pkts;
+    }
+
+    /**
+     * Tells whether the bucket shows the duration of the flow, if the flow has one.
+     */
+    public boolean withDuration() {
+        return withDuration;
+    }
+
+    /**
+     * Tells whether the bucket has been written and no longer is a view over its flow.
+     */
+    public boolean isDetached() {
+        return detached != null;
+    }
+
+    private boolean hasParentDuration() {
+        return withDuration && parent.containsKey(Dimension.DURATION);
+    }
+
+    private Map<String, Object> detach() {
+        if (detached == null) {
+            detached = new HashMap<>(this);
+        }
+
+        return detached;
+    }
+
+    @Override
+    public int size() {
+        if (detached != null) return detached.size();
+
+        int size = parent.size() + 3;
+        if (parent.containsKey(Dimension.TIMESTAMP)) size--;
+        if (parent.containsKey(Dimension.BYTES)) size--;
+        if (parent.containsKey(Dimension.PKTS)) size--;
+        if (parent.containsKey(Dimension.FIRST_SWITCHED)) size--;
+        if (!withDuration && parent.containsKey(Dimension.DURATION)) size--;
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (detached != null) return detached.containsKey(key);
+
+        switch (FlowRecord.slot(key)) {
+            case FlowRecord.TIMESTAMP:
+            case FlowRecord.BYTES:
+            case FlowRecord.PKTS:
+                return true;
+            case FlowRecord.FIRST_SWITCHED:
+                return false;
+            case FlowRecord.DURATION:
+                return hasParentDuration();
+            default:
+                return parent.containsKey(key);
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (detached != null) return detached.get(key);
+
+        switch (FlowRecord.slot(key)) {
+            case FlowRecord.TIMESTAMP:
+                return timestamp;
+            case FlowRecord.BYTES:
+                return bytes;
+            case FlowRecord.PKTS:
+                return pkts;
+            case FlowRecord.FIRST_SWITCHED:
+                return null;
+            case FlowRecord.DURATION:
+                return withDuration ? parent.get(key) : null;
+            default:
+                return parent.get(key);
+        }
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return detach().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return detach().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        detached = new HashMap<>();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    if (detached != null) return detached.entrySet().iterator();
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return FlowBucket.this.size();
+                }
+            };
+        }
+
+        return entrySet;
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+        private final Iterator<Entry<String, Object>> parentIterator = parent.entrySet().iterator();
+        private int slot = FlowRecord.TIMESTAMP;
+        private Entry<String, Object> next;
+        private String lastKey;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+
+            // Overridden dimensions first, then the ones of the flow
+            while (slot < FlowRecord.SLOTS) {
+                int current = slot++;
+
+                if (current == FlowRecord.TIMESTAMP) {
+                    next = new SimpleImmutableEntry<String, Object>(Dimension.TIMESTAMP, timestamp);
+                } else if (current == FlowRecord.BYTES) {
+                    next = new SimpleImmutableEntry<String, Object>(Dimension.BYTES, bytes);
+                } else if (current == FlowRecord.PKTS) {
+                    next = new SimpleImmutableEntry<String, Object>(Dimension.PKTS, pkts);
+                } else if (current == FlowRecord.DURATION && hasParentDuration()) {
+                    next = new SimpleImmutableEntry<>(Dimension.DURATION, parent.get(Dimension.DURATION));
+                }
+
+                if (next != null) return;
+            }
+
+            while (parentIterator.hasNext()) {
+                Entry<String, Object> entry = parentIterator.next();
+                if (FlowRecord.slot(entry.getKey()) < 0) {
+                    next = new SimpleImmutableEntry<>(entry);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (next == null) throw new NoSuchElementException();
+
+            Entry<String, Object> entry = next;
+            lastKey = entry.getKey();
+            advance();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) throw new IllegalStateException();
+
+            // The rest of the iteration keeps walking the view, the removal
+            // goes to the detached copy
+            detach().remove(lastKey);
+            lastKey = null;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package net.redborder.samza.util;
+
+import net.redborder.samza.util.constants.Dimension;
+
+import java.util.*;
+
+/**
+ * Flow message that keeps the numeric dimensions used by the flow functions
+ * (timestamp, first_switched, duration, bytes and pkts) as primitive longs when
+ * they are integral numbers, and every other value in a plain map as it came. It behaves as a regular
+ * Map<String, Object>, so stores, enrichments and the output serde work with
+ * it unchanged, while the flow functions read and write the numeric slots
+ * without parsing or boxing.
+ */
+public class FlowRecord extends AbstractMap<String, Object> {
+    public static final int TIMESTAMP = 0;
+    public static final int FIRST_SWITCHED = 1;
+    public static final int DURATION = 2;
+    public static final int BYTES = 3;
+    public static final int PKTS = 4;
+
+    private static final String[] KEYS = new String[]{
+            Dimension.TIMESTAMP, Dimension.FIRST_SWITCHED, Dimension.DURATION, Dimension.BYTES, Dimension.PKTS
+    };
+
+    public static final int SLOTS = KEYS.length;
+
+    private final long[] values = new long[SLOTS];
+    private int present;
+
+    // Copies made by split share the remaining dimensions until one of them writes
+    private Map<String, Object> fields;
+    private boolean shared;
+
+    private transient Set<Entry<String, Object>> entrySet;
+
+    public FlowRecord() {
+        this.fields = new HashMap<>();
+    }
+
+    public FlowRecord(Map<String, Object> message) {
+        this.fields = new HashMap<>(message.size());
+        putAll(message);
+    }
+
+    private FlowRecord(FlowRecord other) {
+        System.arraycopy(other.values, 0, this.values, 0, SLOTS);
+        this.present = other.present;
+        this.fields = other.fields;
+        this.shared = true;
+        other.shared = true;
+    }
+
+    /**
+     * Returns the message itself if it already is a flow record, or a new record
+     * holding its dimensions otherwise.
+     */
+    public static FlowRecord of(Map<String, Object> message) {
+        if (message instanceof FlowRecord) {
+            return (FlowRecord) message;
+        } else {
+            return new FlowRecord(message);
+        }
+    }
+
+    /**
+     * Returns the slot of the given dimension, or -1 if the dimension is kept in the map.
+     */
+    public static int slot(Object key) {
+        if (!(key instanceof String)) return -1;
+
+        switch ((String) key) {
+            case Dimension.TIMESTAMP:
+                return TIMESTAMP;
+            case Dimension.FIRST_SWITCHED:
+                return FIRST_SWITCHED;
+            case Dimension.DURATION:
+                return DURATION;
+            case Dimension.BYTES:
+                return BYTES;
+            case Dimension.PKTS:
+                return PKTS;
+            default:
+                return -1;
+        }
+    }
+
+    public static String key(int slot) {
+        return KEYS[slot];
+    }
+
+    /**
+     * Reads a numeric dimension from any message, parsing it when the message
+     * is not a flow record.
+     *
+     * @throws NumberFormatException if the value is not a valid long
+     */
+    public static long getLong(Map<String, Object> message, String key) {
+        if (message instanceof FlowRecord) {
+            int slot = slot(key);
+            if (slot >= 0) return ((FlowRecord) message).getLong(slot);
+        }
+
+        return Long.parseLong(message.get(key).toString());
+    }
+
+    public static void putLong(Map<String, Object> message, String key, long value) {
+        if (message instanceof FlowRecord) {
+            int slot = slot(key);
+            if (slot >= 0) {
+                ((FlowRecord) message).setLong(slot, value);
+                return;
+            }
+        }
+
+        message.put(key, value);
+    }
+
+    /**
+     * Copies the message. Flow records share their non numeric dimensions with
+     * the copy until either of them modifies one.
+     */
+    public static Map<String, Object> copyOf(Map<String, Object> message) {
+        if (message instanceof FlowRecord) {
+            return ((FlowRecord) message).copy();
+        } else {
+            return new HashMap<>(message);
+        }
+    }
+
+    public FlowRecord copy() {
+        return new FlowRecord(this);
+    }
+
+    /**
+     * Tells whether the dimension has a non null value, either as a long or as it came.
+     */
+    public boolean has(int slot) {
+        return (present & (1 << slot)) != 0 || fields.get(KEYS[slot]) != null;
+    }
+
+    /**
+     * Tells whether the dimension is held as a long, not as the value it came with.
+     */
+    public boolean hasLong(int slot) {
+        return (present & (1 << slot)) != 0;
+    }
+
+    /**
+     * Read only view of the dimensions that are not held as longs.
+     */
+    public Map<String, Object> otherDimensions() {
+        return Collections.unmodifiableMap(fields);
+    }
+
+    /**
+     * @throws NumberFormatException if the dimension was set to something that is not a long
+     * @throws NullPointerException  if the dimension is not present
+     */
+    public long getLong(int slot) {
+        if ((present & (1 << slot)) != 0) {
+            return values[slot];
+        } else {
+            return Long.parseLong(fields.get(KEYS[slot]).toString());
+        }
+    }
+
+    public void setLong(int slot, long value) {
+        if ((present & (1 << slot)) == 0 && fields.containsKey(KEYS[slot])) {
+            writableFields().remove(KEYS[slot]);
+        }
+
+        values[slot] = value;
+        present |= 1 << slot;
+    }
+
+    public void clear(int slot) {
+        present &= ~(1 << slot);
+        if (fields.containsKey(KEYS[slot])) {
+            writableFields().remove(KEYS[slot]);
+        }
+    }
+
+    private Map<String, Object> writableFields() {
+        if (shared) {
+            fields = new HashMap<>(fields);
+            shared = false;
+        }
+
+        return fields;
+    }
+
+    private Object boxed(int slot) {
+        return (present & (1 << slot)) != 0 ? Long.valueOf(values[slot]) : fields.get(KEYS[slot]);
+    }
+
+    @Override
+    public int size() {
+        return Integer.bitCount(present) + fields.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = slot(key);
+        if (slot >= 0 && (present & (1 << slot)) != 0) return true;
+        return fields.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = slot(key);
+        if (slot >= 0) return boxed(slot);
+        return fields.get(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int slot = slot(key);
+
+        if (slot >= 0) {
+            Object old = boxed(slot);
+
+            // Values that are not integral numbers are kept as they came, so they
+            // are written back unchanged and getLong parses them as a plain map did
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                setLong(slot, ((Number) value).longValue());
+            } else {
+                present &= ~(1 << slot);
+                writableFields().put(key, value);
+            }
+
+            return old;
+        }
+
+        return writableFields().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = slot(key);
+
+        if (slot >= 0) {
+            Object old = boxed(slot);
+            clear(slot);
+            return old;
+        }
+
+        return fields.containsKey(key) ? writableFields().remove(key) : null;
+    }
+
+    @Override
+    public void clear() {
+        present = 0;
+        fields = new HashMap<>();
+        shared = false;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return FlowRecord.this.size();
+                }
+            };
+        }
+
+        return entrySet;
+    }
+
+    private class SlotEntry implements Entry<String, Object> {
+        private final int slot;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return KEYS[slot];
+        }
+
+        @Override
+        public Object getValue() {
+            return values[slot];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            return put(KEYS[slot], value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry e = (Entry) o;
+            return getKey().equals(e.getKey()) && getValue().equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + values[slot];
+        }
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int slot = -1;
+        private Map<String, Object> iterated;
+        private Iterator<Entry<String, Object>> fieldsIterator;
+        private int lastSlot = -1;
+        private String lastKey;
+
+        EntryIterator() {
+            advanceSlot();
+        }
+
+        private void advanceSlot() {
+            do {
+                slot++;
+            } while (slot < SLOTS && (present & (1 << slot)) == 0);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (slot < SLOTS) return true;
+
+            if (fieldsIterator == null) {
+                iterated = fields;
+                fieldsIterator = iterated.entrySet().iterator();
+            }
+
+            return fieldsIterator.hasNext();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (slot < SLOTS) {
+                Entry<String, Object> entry = new SlotEntry(slot);
+                lastSlot = slot;
+                lastKey = KEYS[slot];
+                advanceSlot();
+                return entry;
+            }
+
+            if (!hasNext()) throw new NoSuchElementException();
+            Entry<String, Object> entry = fieldsIterator.next();
+            lastSlot = -1;
+            lastKey = entry.getKey();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastKey == null) throw new IllegalStateException();
+
+            if (lastSlot >= 0) {
+                present &= ~(1 << lastSlot);
+            } else if (iterated == fields && !shared) {
+                fieldsIterator.remove();
+            } else {
+                // The iterated map is shared with a copy, so it is left untouched
+                writableFields().remove(lastKey);
+            }
+
+            lastKey = null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package net.redborder.samza.util;
+
+/**
+ * Parses textual IPv4 and IPv6 addresses without regular expressions and
+ * without resolving names, so they can be looked up by their numeric value.
+ */
+public final class IpAddress {
+
+    private IpAddress() {
+    }
+
+    /**
+     * Parses a dotted quad IPv4 address such as 192.168.1.1.
+     *
+     * @return the address as an unsigned 32 bit value, or -1 if it is not a valid IPv4 address
+     */
+    public static long parseIPv4(String ip) {
+        return parseIPv4(ip, 0, ip.length());
+    }
+
+    private static long parseIPv4(String ip, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+
+        while (i < end) {
+            int octet = 0;
+            int digits = 0;
+
+            while (i < end) {
+                char c = ip.charAt(i);
+                if (c < '0' || c > '9') break;
+                octet = octet * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+
+            if (digits == 0 || digits > 3 || octet > 255) return -1;
+
+            address = (address << 8) | octet;
+            octets++;
+
+            if (i < end) {
+                if (ip.charAt(i) != '.' || octets == 4) return -1;
+                i++;
+                // A trailing dot is not an address
+                if (i == end) return -1;
+            }
+        }
+
+        return octets == 4 ? address : -1;
+    }
+
+    /**
+     * Parses an IPv6 address, with or without :: compression and with an optional
+     * trailing IPv4 part such as ::ffff:10.0.0.1.
+     *
+     * @param address receives the 16 bytes of the address
+     * @return false if it is not a valid IPv6 address, in which case address is left in an undefined state
+     */
+    public static boolean parseIPv6(String ip, byte[] address) {
+        int length = ip.length();
+        if (length < 2) return false;
+
+        int groups = 0;
+        int compressed = -1;
+        int i = 0;
+
+        if (ip.charAt(0) == ':') {
+            if (ip.charAt(1) != ':') return false;
+            compressed = 0;
+            i = 2;
+        }
+
+        while (i < length) {
+            if (groups == 8) return false;
+
+            int group = 0;
+            int digits = 0;
+            int start = i;
+
+            while (i < length) {
+                int value = hex(ip.charAt(i));
+                if (value < 0) break;
+                group = (group << 4) | value;
+                digits++;
+                i++;
+            }
+
+            if (i < length && ip.charAt(i) == '.') {
+                // Embedded IPv4 address, always the last two groups
+                if (groups > 6) return false;
+                long ipv4 = parseIPv4(ip, start, length);
+                if (ipv4 < 0) return false;
+
+                address[groups * 2] = (byte) (ipv4 >> 24);
+                address[groups * 2 + 1] = (byte) (ipv4 >> 16);
+                address[groups * 2 + 2] = (byte) (ipv4 >> 8);
+                address[groups * 2 + 3] = (byte) ipv4;
+                groups += 2;
+                i = length;
+                break;
+            }
+
+            if (digits == 0 || digits > 4) return false;
+
+            address[groups * 2] = (byte) (group >> 8);
+            address[groups * 2 + 1] = (byte) group;
+            groups++;
+
+            if (i < length) {
+                if (ip.charAt(i) != ':') return false;
+                i++;
+
+                if (i < length && ip.charAt(i) == ':') {
+                    if (compressed >= 0) return false;
+                    compressed = groups;
+                    i++;
+                } else if (i == length) {
+                    return false;
+                }
+            }
+        }
+
+        if (compressed >= 0) {
+            if (groups == 8) return false;
+
+            // Move the groups after :: to the end and fill the gap with zeros
+            int tail = (groups - compressed) * 2;
+            int gap = 16 - groups * 2;
+            System.arraycopy(address, compressed * 2, address, compressed * 2 + gap, tail);
+            for (int j = compressed * 2; j < compressed * 2 + gap; j++) address[j] = 0;
+        } else if (groups != 8) {
+            return false;
+        }
+
+        return true;
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+}
@@ -0,0 +1,157 @@
+package net.redborder.samza.util;
+
+import java.util.Arrays;
+
+/**
+ * Bounded LRU cache keyed by up to 128 bits given as two longs. Entries live in
+ * arrays allocated up front, so lookups, insertions and evictions do not
+ * allocate. Not thread safe.
+ */
+public class LruCache<V> {
+    private static final int NONE = -1;
+
+    // Hash table with chaining whose entries are also linked from the most to
+    // the least recently used one. All links are indexes into the entry arrays
+    private final int capacity;
+    private final int[] buckets;
+    private final int mask;
+
+    private final long[] highs;
+    private final long[] lows;
+    private final Object[] values;
+    private final int[] chain;
+    private final int[] newer;
+    private final int[] older;
+
+    private int size;
+    private int newest = NONE;
+    private int oldest = NONE;
+
+    public LruCache(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+
+        int tableSize = Integer.highestOneBit(this.capacity * 2 - 1) << 1;
+        this.buckets = new int[tableSize];
+        this.mask = tableSize - 1;
+        Arrays.fill(buckets, NONE);
+
+        this.highs = new long[this.capacity];
+        this.lows = new long[this.capacity];
+        this.values = new Object[this.capacity];
+        this.chain = new int[this.capacity];
+        this.newer = new int[this.capacity];
+        this.older = new int[this.capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(buckets, NONE);
+        Arrays.fill(values, null);
+        size = 0;
+        newest = NONE;
+        oldest = NONE;
+    }
+
+    private int bucket(long high, long low) {
+        long hash = high * 0x9E3779B97F4A7C15L + low;
+        hash ^= hash >>> 32;
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long high, long low) {
+        for (int entry = buckets[bucket(high, low)]; entry != NONE; entry = chain[entry]) {
+            if (highs[entry] == high && lows[entry] == low) {
+                touch(entry);
+                return (V) values[entry];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return true if the least recently used entry was evicted to make room
+     */
+    public boolean put(long high, long low, V value) {
+        int bucket = bucket(high, low);
+
+        for (int entry = buckets[bucket]; entry != NONE; entry = chain[entry]) {
+            if (highs[entry] == high && lows[entry] == low) {
+                values[entry] = value;
+                touch(entry);
+                return false;
+            }
+        }
+
+        boolean evicted = false;
+        int entry;
+
+        if (size < capacity) {
+            entry = size++;
+        } else {
+            entry = oldest;
+            unlink(entry);
+            unchain(entry);
+            evicted = true;
+        }
+
+        highs[entry] = high;
+        lows[entry] = low;
+        values[entry] = value;
+        chain[entry] = buckets[bucket];
+        buckets[bucket] = entry;
+        linkNewest(entry);
+
+        return evicted;
+    }
+
+    private void touch(int entry) {
+        if (entry != newest) {
+            unlink(entry);
+            linkNewest(entry);
+        }
+    }
+
+    private void linkNewest(int entry) {
+        newer[entry] = NONE;
+        older[entry] = newest;
+        if (newest != NONE) newer[newest] = entry;
+        newest = entry;
+        if (oldest == NONE) oldest = entry;
+    }
+
+    private void unlink(int entry) {
+        if (newer[entry] != NONE) {
+            older[newer[entry]] = older[entry];
+        } else {
+            newest = older[entry];
+        }
+
+        if (older[entry] != NONE) {
+            newer[older[entry]] = newer[entry];
+        } else {
+            oldest = newer[entry];
+        }
+    }
+
+    private void unchain(int entry) {
+        int bucket = bucket(highs[entry], lows[entry]);
+
+        if (buckets[bucket] == entry) {
+            buckets[bucket] = chain[entry];
+            return;
+        }
+
+        for (int previous = buckets[bucket]; previous != NONE; previous = chain[previous]) {
+            if (chain[previous] == entry) {
+                chain[previous] = chain[entry];
+                return;
+            }
+        }
+    }
+}
@@ -2,37 +2,165 @@ package net.redborder.samza.util;
 
 
 import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
+import org.bouncycastle.crypto.macs.HMac;
 import org.bouncycastle.crypto.params.KeyParameter;
 
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MacScramble {
-    private static byte[] mac_prefix = "fdah7usad782345@".getBytes();
+    private static final byte[] DEFAULT_MAC_PREFIX = "fdah7usad782345@".getBytes();
 
     private static final int PBKDF2_ITERATIONS = 10;
     private static final int PBKDF2_KEYSIZE = 48;
+    private static final AtomicLong ids = new AtomicLong();
+
+    /**
+     * HMAC engine of the PBKDF2 mode. Its key is the MAC, so it is keyed on every
+     * scramble, but the engine itself is reused by each thread.
+     */
+    private static final ThreadLocal<HMac> pbkdf2Hmac = new ThreadLocal<HMac>() {
+        @Override
+        protected HMac initialValue() {
+            return new HMac(new SHA256Digest());
+        }
+    };
+
+    /**
+     * How the MACs of a service provider are scrambled.
+     */
+    public enum Mode {
+        /**
+         * PBKDF2-HMAC-SHA256 of the prefix and the MAC with the salt, the original scramble.
+         */
+        PBKDF2("pbkdf2"),
+        /**
+         * HMAC-SHA256 of the prefix and the MAC keyed with the salt, truncated to 48 bits.
+         * Much cheaper, but its results differ from the PBKDF2 ones.
+         */
+        HMAC_SHA256("hmac-sha256");
+
+        private final String name;
+
+        Mode(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Mode with the given name, PBKDF2 if it is null or unknown.
+         */
+        public static Mode fromName(String name) {
+            for (Mode mode : values()) {
+                if (mode.name.equalsIgnoreCase(name)) return mode;
+            }
+
+            return PBKDF2;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final long id = ids.incrementAndGet();
     private final byte[] spSalt;
+    private final byte[] macPrefix;
+    private final Mode mode;
+    /**
+     * Input of the first PBKDF2 round, the salt followed by the block number 1.
+     * The derived key fits in one block, so it is the only one ever needed.
+     */
+    private final byte[] firstBlock;
+    /**
+     * HMAC engines already keyed with the salt, for the HMAC mode.
+     */
+    private final ThreadLocal<HMac> saltHmac = new ThreadLocal<HMac>() {
+        @Override
+        protected HMac initialValue() {
+            HMac hmac = new HMac(new SHA256Digest());
+            hmac.init(new KeyParameter(spSalt));
+            return hmac;
+        }
+    };
 
     public MacScramble(final byte[] spSalt, String macPrefix) {
-        if (macPrefix != null && !macPrefix.equals("")) {
-            mac_prefix = macPrefix.getBytes();
-        }
+        this(spSalt, macPrefix, Mode.PBKDF2);
+    }
+
+    public MacScramble(final byte[] spSalt, String macPrefix, Mode mode) {
         this.spSalt = Arrays.copyOf(spSalt, spSalt.length);
+        this.macPrefix = macPrefix != null && !macPrefix.equals("") ? macPrefix.getBytes() : DEFAULT_MAC_PREFIX;
+        this.mode = mode;
+        this.firstBlock = Arrays.copyOf(spSalt, spSalt.length + 4);
+        this.firstBlock[spSalt.length + 3] = 1;
+    }
+
+    /**
+     * Unique number of this instance, a new salt always gets a new one.
+     */
+    public long id() {
+        return id;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Tells whether the other instance scrambles exactly like this one, so this
+     * one can be kept when the salts are read again.
+     */
+    public boolean scramblesLike(MacScramble other) {
+        return mode == other.mode && Arrays.equals(spSalt, other.spSalt) && Arrays.equals(macPrefix, other.macPrefix);
     }
 
     public byte[] scrambleMac(final byte[] mac) throws GeneralSecurityException {
-        final PKCS5S2ParametersGenerator gen = new PKCS5S2ParametersGenerator(new SHA256Digest());
+        return mode == Mode.HMAC_SHA256 ? hmac(mac) : pbkdf2(mac);
+    }
+
+    private byte[] hmac(final byte[] mac) {
+        final HMac hmac = saltHmac.get();
+        final byte[] result = new byte[hmac.getMacSize()];
 
-        final byte[] key = new byte[mac_prefix.length + mac.length];
-        System.arraycopy(mac_prefix, 0, key, 0, mac_prefix.length);
-        for (int a = 0; a < mac.length; a++) {
-            key[mac_prefix.length + a] = mac[a];
+        // doFinal leaves the engine keyed with the salt again
+        hmac.update(macPrefix, 0, macPrefix.length);
+        hmac.update(mac, 0, mac.length);
+        hmac.doFinal(result, 0);
+
+        return Arrays.copyOf(result, PBKDF2_KEYSIZE / 8);
+    }
+
+    private byte[] pbkdf2(final byte[] mac) {
+        final byte[] key = new byte[macPrefix.length + mac.length];
+        System.arraycopy(macPrefix, 0, key, 0, macPrefix.length);
+        System.arraycopy(mac, 0, key, macPrefix.length, mac.length);
+
+        // PBKDF2-HMAC-SHA256 of a single block: U1 = HMAC(key, salt || 1),
+        // Un = HMAC(key, Un-1) and the result is U1 ^ ... ^ Un
+        final HMac hmac = pbkdf2Hmac.get();
+        hmac.init(new KeyParameter(key));
+
+        final byte[] round = new byte[hmac.getMacSize()];
+        hmac.update(firstBlock, 0, firstBlock.length);
+        hmac.doFinal(round, 0);
+
+        final byte[] derived = Arrays.copyOf(round, PBKDF2_KEYSIZE / 8);
+        for (int i = 1; i < PBKDF2_ITERATIONS; i++) {
+            hmac.update(round, 0, round.length);
+            hmac.doFinal(round, 0);
+
+            for (int a = 0; a < derived.length; a++) {
+                derived[a] ^= round[a];
+            }
         }
 
-        gen.init(key, this.spSalt, PBKDF2_ITERATIONS);
-        return ((KeyParameter) gen.generateDerivedParameters(PBKDF2_KEYSIZE)).getKey();
+        return derived;
     }
-}
 
+    @Override
+    public String toString() {
+        return "MacScramble{id=" + id + ", mode=" + mode + "}";
+    }
+}
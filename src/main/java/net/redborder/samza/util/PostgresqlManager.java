@@ -17,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,7 +35,11 @@ public class PostgresqlManager {
     private Connection conn = null;
     private KeyValueStore<String, Map<String, Object>> storeWLCSql;
     private KeyValueStore<String, Map<String, Object>> storeSensorSql;
-    private Map<String, MacScramble> scrambles = new HashMap<>();
+    private StoreManager storeManager;
+    /**
+     * Scrambles per service provider. It is never modified, every refresh publishes a new one.
+     */
+    private volatile Map<String, MacScramble> scrambles = Collections.emptyMap();
     private String macScramblePrefix = null;
 
     public PostgresqlManager(Config config, StoreManager storeManager) {
@@ -48,6 +53,7 @@ public class PostgresqlManager {
             String user = config.get("redborder.postgresql.user");
             String pass = config.get("redborder.postgresql.pass");
             macScramblePrefix = config.get("redborder.macscramble.prefix");
+            this.storeManager = storeManager;
             storeWLCSql = storeManager.getStore(WLC_PSQL_STORE);
             storeSensorSql = storeManager.getStore(SENSOR_PSQL_STORE);
 
@@ -71,27 +77,36 @@ public class PostgresqlManager {
         return scrambles;
     }
 
+    /**
+     * Reads the salts of the service providers again and publishes them at once.
+     * If they can't be read the previous ones are kept, so messages are never
+     * left unscrambled while refreshing.
+     */
     public void updateSalts() {
         Statement st = null;
         ResultSet rs = null;
-        scrambles.clear();
 
         try {
             if (conn != null) {
                 st = conn.createStatement();
                 rs = st.executeQuery("SELECT uuid, property FROM sensors WHERE domain_type=6;");
                 ObjectMapper mapper = new ObjectMapper();
+                Map<String, MacScramble> read = new HashMap<>();
+
                 while (rs.next()) {
                     String uuid = rs.getString("uuid");
                     String propertyStr = rs.getString("property");
 
                     Map<String, Object> properties = mapper.readValue(propertyStr, Map.class);
                     String salt = (String) properties.get("mac_hashing_salt");
+                    MacScramble.Mode mode = MacScramble.Mode.fromName((String) properties.get("mac_hashing_mode"));
 
                     if (salt != null) {
-                        scrambles.put(uuid, new MacScramble(Hex.decode(salt), macScramblePrefix));
+                        read.put(uuid, new MacScramble(Hex.decode(salt), macScramblePrefix, mode));
                     }
                 }
+
+                scrambles = buildScrambles(read, scrambles);
             }
 
             log.info("Updated salts: {}", scrambles.entrySet());
@@ -104,6 +119,8 @@ public class PostgresqlManager {
             e.printStackTrace();
         } catch (IOException e) {
             e.printStackTrace();
+        } catch (RuntimeException e) {
+            log.error("Couldn't read the salts, keeping the previous ones", e);
         } finally {
             try {
                 if (rs != null) rs.close();
@@ -116,6 +133,26 @@ public class PostgresqlManager {
         }
     }
 
+    /**
+     * Publishes the scrambles just read. Service providers whose salt and mode
+     * didn't change keep their previous scramble, and with it their cached results.
+     */
+    static Map<String, MacScramble> buildScrambles(Map<String, MacScramble> read, Map<String, MacScramble> previous) {
+        Map<String, MacScramble> built = new HashMap<>();
+
+        for (Map.Entry<String, MacScramble> entry : read.entrySet()) {
+            MacScramble scramble = previous.get(entry.getKey());
+
+            if (scramble == null || !scramble.scramblesLike(entry.getValue())) {
+                scramble = entry.getValue();
+            }
+
+            built.put(entry.getKey(), scramble);
+        }
+
+        return Collections.unmodifiableMap(built);
+    }
+
     public void update() {
         updateWLC();
         updateSensor();
@@ -145,8 +182,9 @@ public class PostgresqlManager {
                         Double latitudeDbl = (double) Math.round(Double.valueOf(latitude) * 100000) / 100000;
                         location.put("client_latlong", latitudeDbl + "," + longitudeDbl);
 
-                        tmpCache.put(uuid, location);
-                        storeSensorSql.put(uuid, location);
+                        String key = storeManager.key(SENSOR_PSQL_STORE, uuid);
+                        tmpCache.put(key, location);
+                        storeSensorSql.put(key, location);
                     }
                 }
 
@@ -251,8 +289,9 @@ public class PostgresqlManager {
                     location.putAll(enriching);
                     if (!location.isEmpty()) {
                         log.debug("AP: {} LOCATION: {}", rs.getString("mac_address"), location);
-                        tmpCache.put(rs.getString("mac_address"), location);
-                        storeWLCSql.put(rs.getString("mac_address"), location);
+                        String key = storeManager.key(WLC_PSQL_STORE, rs.getString("mac_address"));
+                        tmpCache.put(key, location);
+                        storeWLCSql.put(key, location);
 
                     }
                 }
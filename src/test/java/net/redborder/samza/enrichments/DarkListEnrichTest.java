@@ -0,0 +1,50 @@
+package net.redborder.samza.enrichments;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.redborder.samza.util.constants.Dimension.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DarkListEnrichTest extends TestCase {
+
+    private static Map<String, Object> flow(String src, String dst) {
+        Map<String, Object> message = new HashMap<>();
+        if (src != null) message.put(SRC_IP, src);
+        if (dst != null) message.put(DST_IP, dst);
+        return message;
+    }
+
+    @Test
+    public void enrichesWithTheDarklist() {
+        DarkListEnrich.IP_FILE = ClassLoader.getSystemResource("darklist.json").getFile();
+        DarkListEnrich enrich = new DarkListEnrich();
+
+        Map<String, Object> message = flow("192.168.1.1", "8.8.8.8");
+        enrich.enrich(message);
+        assertEquals("source", message.get(DARKLIST_DIRECTION));
+        assertEquals("malware", message.get(DARKLIST_CATEGORY));
+        assertEquals(100, message.get(DARKLIST_SCORE));
+
+        message = flow("8.8.8.8", "2001:db8::5");
+        enrich.enrich(message);
+        assertEquals("destination", message.get(DARKLIST_DIRECTION));
+        assertEquals("scanner", message.get(DARKLIST_CATEGORY));
+
+        message = flow("10.20.30.40", "192.168.1.1");
+        enrich.enrich(message);
+        assertEquals("both", message.get(DARKLIST_DIRECTION));
+        assertEquals("malware", message.get(DARKLIST_CATEGORY));
+
+        message = flow("8.8.8.8", null);
+        enrich.enrich(message);
+        assertEquals("clean", message.get(DARKLIST_DIRECTION));
+        assertEquals("clean", message.get(DARKLIST_CATEGORY));
+        assertNull(message.get(DARKLIST_SCORE));
+    }
+}
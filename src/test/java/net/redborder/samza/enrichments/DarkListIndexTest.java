@@ -0,0 +1,149 @@
+package net.redborder.samza.enrichments;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DarkListIndexTest extends TestCase {
+
+    private static Map<String, Object> reputation(String category, int score) {
+        Map<String, Object> reputation = new HashMap<>();
+        reputation.put("darklist_category", category);
+        reputation.put("darklist_score", score);
+        return reputation;
+    }
+
+    @Test
+    public void findsTheLongestNetwork() {
+        DarkListIndex.Builder builder = new DarkListIndex.Builder();
+        assertTrue(builder.add("10.0.0.0/8", reputation("spam", 20)));
+        assertTrue(builder.add("10.1.0.0/16", reputation("malware", 80)));
+        assertTrue(builder.add("10.1.2.3", reputation("botnet", 100)));
+        assertTrue(builder.add("2001:db8::/32", reputation("scanner", 60)));
+        assertTrue(builder.add("2001:db8::1", reputation("botnet", 100)));
+        DarkListIndex index = builder.build();
+
+        assertEquals(5, index.size());
+        assertEquals("botnet", index.lookup("10.1.2.3").get("darklist_category"));
+        assertEquals("malware", index.lookup("10.1.2.4").get("darklist_category"));
+        assertEquals("spam", index.lookup("10.2.2.3").get("darklist_category"));
+        assertNull(index.lookup("11.1.2.3"));
+        assertEquals("botnet", index.lookup("2001:0db8:0:0:0:0:0:1").get("darklist_category"));
+        assertEquals("scanner", index.lookup("2001:db8:ffff::1").get("darklist_category"));
+        assertNull(index.lookup("2001:db9::1"));
+        assertNull(index.lookup("not an address"));
+    }
+
+    @Test
+    public void masksHostBitsAndReplacesDuplicates() {
+        DarkListIndex.Builder builder = new DarkListIndex.Builder();
+        builder.add("192.168.1.77/24", reputation("spam", 20));
+        builder.add("192.168.1.0/24", reputation("malware", 80));
+        builder.add("0.0.0.0/0", reputation("anything", 1));
+        DarkListIndex index = builder.build();
+
+        assertEquals(2, index.size());
+        assertEquals("malware", index.lookup("192.168.1.1").get("darklist_category"));
+        assertEquals("anything", index.lookup("8.8.8.8").get("darklist_category"));
+        assertNull(index.lookup("::1"));
+    }
+
+    @Test
+    public void skipsInvalidEntries() {
+        DarkListIndex.Builder builder = new DarkListIndex.Builder();
+        assertFalse(builder.add("10.0.0.0/33", reputation("spam", 20)));
+        assertFalse(builder.add("10.0.0.0/", reputation("spam", 20)));
+        assertFalse(builder.add("10.0.0/8", reputation("spam", 20)));
+        assertFalse(builder.add("::/129", reputation("spam", 20)));
+        assertEquals(0, builder.build().size());
+    }
+
+    @Test
+    public void sharesEqualReputations() {
+        DarkListIndex.Builder builder = new DarkListIndex.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add("172.16." + (i / 256) + "." + (i % 256), reputation(i % 2 == 0 ? "spam" : "malware", 20));
+        }
+        DarkListIndex index = builder.build();
+
+        assertEquals(1000, index.size());
+        assertEquals(2, index.profiles());
+        assertSame(index.lookup("172.16.0.0"), index.lookup("172.16.3.230"));
+    }
+
+    @Test
+    public void matchesTheListedAddresses() {
+        DarkListIndex.Builder builder = new DarkListIndex.Builder();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(1);
+
+        for (int i = 0; i < 20000; i++) {
+            long address = random.nextInt(1 << 20);
+            int score = random.nextInt(10);
+            builder.add(ip(address), reputation("category", score));
+            expected.put(address, score);
+        }
+
+        DarkListIndex index = builder.build();
+        assertEquals(expected.size(), index.size());
+
+        for (long address = 0; address < (1 << 20); address += 7) {
+            Map<String, Object> reputation = index.lookupIPv4(address);
+            Integer score = expected.get(address);
+
+            if (score == null) {
+                assertNull(reputation);
+            } else {
+                assertEquals(score, reputation.get("darklist_score"));
+            }
+        }
+    }
+
+    @Test
+    public void neverFiltersListedNetworks() {
+        DarkListIndex.Builder builder = new DarkListIndex.Builder();
+        long[] networks = new long[2000];
+        int[] lengths = new int[networks.length];
+        Random random = new Random(1);
+
+        for (int i = 0; i < networks.length; i++) {
+            lengths[i] = 12 + random.nextInt(21);
+            networks[i] = (random.nextInt() & 0xFFFFFFFFL) & (0xFFFFFFFFL << (32 - lengths[i])) & 0xFFFFFFFFL;
+            builder.add(ip(networks[i]) + "/" + lengths[i], reputation("category", lengths[i]));
+        }
+
+        DarkListIndex index = builder.build();
+
+        for (int i = 0; i < 50000; i++) {
+            // Half of the addresses fall inside some listed network
+            long address = random.nextInt() & 0xFFFFFFFFL;
+            if (random.nextBoolean()) {
+                int network = random.nextInt(networks.length);
+                address = networks[network] | (address & (0xFFFFFFFFL >>> lengths[network]));
+            }
+
+            int longest = -1;
+            for (int n = 0; n < networks.length; n++) {
+                long mask = (0xFFFFFFFFL << (32 - lengths[n])) & 0xFFFFFFFFL;
+                if ((address & mask) == networks[n] && lengths[n] > longest) longest = lengths[n];
+            }
+
+            Map<String, Object> reputation = index.lookupIPv4(address);
+            if (longest < 0) {
+                assertNull(reputation);
+            } else {
+                assertEquals(longest, reputation.get("darklist_score"));
+            }
+        }
+    }
+
+    private static String ip(long address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xff) + "." + ((address >>> 8) & 0xff) + "." + (address & 0xff);
+    }
+}
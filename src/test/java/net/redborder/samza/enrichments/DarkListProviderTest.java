@@ -0,0 +1,98 @@
+package net.redborder.samza.enrichments;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DarkListProviderTest extends TestCase {
+
+    private static void write(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+    }
+
+    private static String entry(String ip, String category) {
+        return "{\"ip\": \"" + ip + "\", \"extra\": [1, {\"a\": 2}], \"enrich_with\": {\"darklist_category\": \"" + category + "\"}}";
+    }
+
+    private static String category(DarkListProvider provider, String ip) {
+        return (String) provider.index().lookup(ip).get("darklist_category");
+    }
+
+    @Test
+    public void reloadsChangedFiles() throws IOException {
+        File file = new File(Files.createTempDirectory("darklist").toFile(), "darklist.json");
+        write(file, "[" + entry("10.0.0.1", "spam") + "]");
+
+        DarkListProvider provider = new DarkListProvider(file.getPath());
+        assertTrue(provider.reloadIfChanged());
+        assertFalse(provider.reloadIfChanged());
+        DarkListIndex loaded = provider.index();
+        assertEquals(1, provider.version());
+        assertEquals("spam", category(provider, "10.0.0.1"));
+
+        write(file, "[" + entry("10.0.0.1", "malware") + ", " + entry("10.0.0.2", "spam") + "]");
+        assertTrue(file.setLastModified(file.lastModified() + 60000));
+
+        assertTrue(provider.reloadIfChanged());
+        assertNotSame(loaded, provider.index());
+        assertEquals(2, provider.version());
+        assertEquals(2, provider.index().size());
+        assertEquals("malware", category(provider, "10.0.0.1"));
+    }
+
+    @Test
+    public void keepsTheIndexOfBrokenFiles() throws IOException {
+        File file = new File(Files.createTempDirectory("darklist").toFile(), "darklist.json");
+        write(file, "[" + entry("10.0.0.1", "spam") + "]");
+
+        DarkListProvider provider = new DarkListProvider(file.getPath());
+        assertTrue(provider.reloadIfChanged());
+
+        write(file, "[" + entry("10.0.0.1", "malware") + ", {\"ip\": ");
+        assertTrue(file.setLastModified(file.lastModified() + 60000));
+
+        assertFalse(provider.reloadIfChanged());
+        assertEquals(1, provider.version());
+        assertEquals("spam", category(provider, "10.0.0.1"));
+    }
+
+    @Test
+    public void readsDirectoriesInNameOrder() throws IOException {
+        File directory = Files.createTempDirectory("darklist").toFile();
+        write(new File(directory, "01-feed.json"), "[" + entry("10.0.0.0/8", "spam") + ", " + entry("10.0.0.1", "spam") + "]");
+        write(new File(directory, "02-delta.json"), "[" + entry("10.0.0.1", "malware") + "]");
+        write(new File(directory, "notes.txt"), "not a darklist");
+
+        DarkListProvider provider = new DarkListProvider(directory.getPath());
+        assertTrue(provider.reloadIfChanged());
+        assertEquals("malware", category(provider, "10.0.0.1"));
+        assertEquals("spam", category(provider, "10.0.0.2"));
+
+        write(new File(directory, "03-delta.json"), "[" + entry("192.168.0.1", "botnet") + "]");
+        assertTrue(provider.reloadIfChanged());
+        assertEquals("botnet", category(provider, "192.168.0.1"));
+    }
+
+    @Test
+    public void loadsFilesThatAppearLater() throws IOException {
+        File file = new File(Files.createTempDirectory("darklist").toFile(), "darklist.json");
+
+        DarkListProvider provider = new DarkListProvider(file.getPath());
+        assertFalse(provider.reloadIfChanged());
+        assertEquals(0, provider.index().size());
+        assertEquals(0, provider.version());
+
+        write(file, "[" + entry("10.0.0.1", "spam") + "]");
+        assertTrue(provider.reloadIfChanged());
+        assertEquals("spam", category(provider, "10.0.0.1"));
+    }
+}
@@ -1,16 +1,25 @@
 package net.redborder.samza.enrichments;
 
 import junit.framework.TestCase;
+import net.redborder.samza.util.PostgresqlManager;
+import org.apache.samza.config.Config;
+import org.apache.samza.task.TaskContext;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static net.redborder.samza.util.constants.Dimension.*;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class EnrichManagerTest extends TestCase {
@@ -35,12 +44,12 @@ public class EnrichManagerTest extends TestCase {
         enrichedMessage.putAll(macEnrichments);
         enrichedMessage.putAll(geoIpEnrichments);
 
-        // Mock the enrich objects to return the maps defined above
+        // Mock the enrich objects to write the maps defined above
         MacVendorEnrich macVendorEnrich = mock(MacVendorEnrich.class);
-        when(macVendorEnrich.enrich(message)).thenReturn(macEnrichments);
+        doAnswer(putAll(macEnrichments)).when(macVendorEnrich).enrich(message);
 
         GeoIpEnrich geoIPEnrich = mock(GeoIpEnrich.class);
-        when(geoIPEnrich.enrich(message)).thenReturn(geoIpEnrichments);
+        doAnswer(putAll(geoIpEnrichments)).when(geoIPEnrich).enrich(message);
 
         // Add the enrich objects and enrich the message
         manager.addEnrichment(macVendorEnrich);
@@ -48,6 +57,170 @@ public class EnrichManagerTest extends TestCase {
         messageFromManager = manager.enrich(message);
 
         assertEquals(enrichedMessage, messageFromManager);
+        assertSame(message, messageFromManager);
+    }
+
+    @Test
+    public void laterEnrichmentsSeeEarlierFields() {
+        EnrichManager manager = new EnrichManager();
+        Map<String, Object> message = new HashMap<>();
+        final Map<String, Object> seen = new HashMap<>();
+
+        manager.addEnrichment(new FieldsEnrich(EnrichManager.fields(), EnrichManager.fields(CLIENT_MAC_VENDOR)) {
+            @Override
+            public void enrich(Map<String, Object> message) {
+                message.put(CLIENT_MAC_VENDOR, "Apple");
+            }
+        });
+
+        manager.addEnrichment(new FieldsEnrich(null, EnrichManager.fields()) {
+            @Override
+            public void enrich(Map<String, Object> message) {
+                seen.putAll(message);
+            }
+        });
+
+        manager.enrich(message);
+        assertEquals("Apple", seen.get(CLIENT_MAC_VENDOR));
+    }
+
+    @Test
+    public void skipsEnrichmentsWithoutInputs() {
+        EnrichManager manager = new EnrichManager();
+        final List<String> ran = new ArrayList<>();
+
+        manager.addEnrichment(new FieldsEnrich(EnrichManager.fields(SRC_IP, DST_IP), EnrichManager.fields(SRC_COUNTRY_CODE)) {
+            @Override
+            public void enrich(Map<String, Object> message) {
+                ran.add("geo_ip");
+            }
+        });
+
+        manager.addEnrichment(new FieldsEnrich(EnrichManager.fields(), EnrichManager.fields(DARKLIST_DIRECTION)) {
+            @Override
+            public void enrich(Map<String, Object> message) {
+                ran.add("darklist");
+            }
+        });
+
+        Map<String, Object> message = new HashMap<>();
+        message.put(CLIENT_MAC, "AA:AA:AA:AA:AA:AA");
+        manager.enrich(message);
+        assertEquals(Arrays.asList("darklist"), ran);
+
+        ran.clear();
+        message.put(DST_IP, "8.8.8.8");
+        manager.enrich(message);
+        assertEquals(Arrays.asList("geo_ip", "darklist"), ran);
+    }
+
+    @Test
+    public void groupsIndependentEnrichments() {
+        EnrichManager manager = new EnrichManager();
+        IEnrich macVendor = new FieldsEnrich(EnrichManager.fields(CLIENT_MAC), EnrichManager.fields(CLIENT_MAC_VENDOR));
+        IEnrich geoIp = new FieldsEnrich(EnrichManager.fields(SRC_IP, DST_IP), EnrichManager.fields(SRC_COUNTRY_CODE));
+        IEnrich macHashing = new FieldsEnrich(EnrichManager.fields(CLIENT_MAC), EnrichManager.fields(CLIENT_MAC));
+        IEnrich darklist = new FieldsEnrich(EnrichManager.fields(), EnrichManager.fields(DARKLIST_DIRECTION));
+        IEnrich unknown = new FieldsEnrich(null, null);
+
+        manager.addEnrichment(macVendor);
+        manager.addEnrichment(macHashing);
+        manager.addEnrichment(geoIp);
+        manager.addEnrichment(darklist);
+
+        List<List<IEnrich>> levels = manager.levels();
+        assertEquals(2, levels.size());
+        assertEquals(Arrays.asList(macVendor, geoIp, darklist), levels.get(0));
+        assertEquals(Arrays.asList(macHashing), levels.get(1));
+
+        manager.addEnrichment(unknown);
+        manager.addEnrichment(new FieldsEnrich(EnrichManager.fields(SRC_IP), EnrichManager.fields(SRC_AS_NAME)));
+        assertEquals(4, manager.levels().size());
+        assertEquals(Arrays.asList(unknown), manager.levels().get(2));
+    }
+
+    @Test
+    public void enrichesLevelsInParallel() {
+        EnrichManager sequential = new EnrichManager();
+        EnrichManager parallel = new EnrichManager();
+        parallel.setParallelism(2);
+
+        for (EnrichManager manager : Arrays.asList(sequential, parallel)) {
+            manager.addEnrichment(new FieldsEnrich(EnrichManager.fields(CLIENT_MAC), EnrichManager.fields(CLIENT_MAC_VENDOR)) {
+                @Override
+                public void enrich(Map<String, Object> message) {
+                    message.put(CLIENT_MAC_VENDOR, "vendor of " + message.get(CLIENT_MAC));
+                }
+            });
+
+            manager.addEnrichment(new FieldsEnrich(EnrichManager.fields(SRC_IP), EnrichManager.fields(SRC_COUNTRY_CODE, SRC_AS_NAME)) {
+                @Override
+                public void enrich(Map<String, Object> message) {
+                    message.put(SRC_COUNTRY_CODE, "country of " + message.get(SRC_IP));
+                    message.remove(SRC_AS_NAME);
+                }
+            });
+
+            manager.addEnrichment(new FieldsEnrich(EnrichManager.fields(CLIENT_MAC), EnrichManager.fields(CLIENT_MAC)) {
+                @Override
+                public void enrich(Map<String, Object> message) {
+                    message.put(CLIENT_MAC, "scrambled " + message.get(CLIENT_MAC));
+                }
+            });
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            Map<String, Object> message = new HashMap<>();
+            message.put(CLIENT_MAC, "mac " + i);
+            if (i % 3 != 0) message.put(SRC_IP, "ip " + i);
+            message.put(SRC_AS_NAME, "as " + i);
+
+            Map<String, Object> expected = sequential.enrich(new HashMap<>(message));
+            assertEquals(expected, parallel.enrich(message));
+        }
+    }
+
+    private static class FieldsEnrich implements IEnrich {
+        private final Set<String> inputs;
+        private final Set<String> outputs;
+
+        FieldsEnrich(Set<String> inputs, Set<String> outputs) {
+            this.inputs = inputs;
+            this.outputs = outputs;
+        }
+
+        @Override
+        public void enrich(Map<String, Object> message) {
+        }
+
+        @Override
+        public void setPostgresqlManager(PostgresqlManager postgresqlManager) {
+        }
+
+        @Override
+        public void init(Config config, TaskContext context) {
+        }
+
+        @Override
+        public Set<String> inputFields() {
+            return inputs;
+        }
+
+        @Override
+        public Set<String> outputFields() {
+            return outputs;
+        }
+    }
+
+    private static Answer<Void> putAll(final Map<String, Object> fields) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Map<String, Object> message = (Map<String, Object>) invocation.getArguments()[0];
+                message.putAll(fields);
+                return null;
+            }
+        };
     }
 
     @Test
@@ -0,0 +1,89 @@
+package net.redborder.samza.enrichments;
+
+import junit.framework.TestCase;
+import org.apache.samza.metrics.Counter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GeoIpCacheTest extends TestCase {
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        Counter hits = new Counter("hits");
+        Counter misses = new Counter("misses");
+        Counter evictions = new Counter("evictions");
+        GeoIpCache cache = new GeoIpCache(2, hits, misses, evictions);
+
+        GeoIpInfo spain = new GeoIpInfo("ES", null);
+        GeoIpInfo france = new GeoIpInfo("FR", null);
+        GeoIpInfo italy = new GeoIpInfo("IT", null);
+
+        cache.putIPv4(1, spain);
+        cache.putIPv4(2, france);
+        assertSame(spain, cache.getIPv4(1));
+
+        cache.putIPv4(3, italy);
+        assertNull(cache.getIPv4(2));
+        assertSame(spain, cache.getIPv4(1));
+        assertSame(italy, cache.getIPv4(3));
+
+        assertEquals(3, hits.getCount());
+        assertEquals(1, misses.getCount());
+        assertEquals(1, evictions.getCount());
+    }
+
+    @Test
+    public void keepsIPv4AndIPv6Apart() {
+        GeoIpCache cache = new GeoIpCache(4, new Counter("hits"), new Counter("misses"), new Counter("evictions"));
+        GeoIpInfo v4 = new GeoIpInfo("ES", "AS v4");
+        GeoIpInfo v6 = new GeoIpInfo("EU", "AS v6");
+
+        cache.putIPv4(1, v4);
+        cache.putIPv6(0L, 1L, v6);
+
+        assertSame(v4, cache.getIPv4(1));
+        assertSame(v6, cache.getIPv6(0L, 1L));
+        assertNull(cache.getIPv6(1L, 0L));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void behavesLikeAnAccessOrderedMap() {
+        final int capacity = 64;
+        Map<Long, GeoIpInfo> expected = new LinkedHashMap<Long, GeoIpInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, GeoIpInfo> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        Counter evictions = new Counter("evictions");
+        GeoIpCache cache = new GeoIpCache(capacity, new Counter("hits"), new Counter("misses"), evictions);
+        Random random = new Random(1);
+        int evicted = 0;
+
+        for (int i = 0; i < 100000; i++) {
+            long high = random.nextInt(4);
+            long low = random.nextInt(40);
+            long key = (high << 32) | low;
+
+            if (random.nextBoolean()) {
+                assertSame(expected.get(key), cache.getIPv6(high, low));
+            } else {
+                GeoIpInfo info = new GeoIpInfo(String.valueOf(i), null);
+                if (!expected.containsKey(key) && expected.size() == capacity) evicted++;
+                expected.put(key, info);
+                cache.putIPv6(high, low, info);
+            }
+        }
+
+        assertEquals(expected.size(), cache.size());
+        assertEquals(evicted, evictions.getCount());
+    }
+}
@@ -30,8 +30,8 @@ public class GeoIpEnrichTest extends TestCase {
 
         result.putAll(message);
 
-        Map<String, Object> enrichMessage = geoIpEnrich.enrich(message);
-        assertEquals(result, enrichMessage);
+        geoIpEnrich.enrich(message);
+        assertEquals(result, message);
 
         result.clear();
 
@@ -41,6 +41,7 @@ public class GeoIpEnrichTest extends TestCase {
         GeoIpEnrich.CITY_V6_DB_PATH = ClassLoader.getSystemResource("cityv6.dat").getFile();
 
         geoIpEnrich = new GeoIpEnrich();
+        assertNull(geoIpEnrich.cache);
 
         message.clear();
 
@@ -53,7 +54,8 @@ public class GeoIpEnrichTest extends TestCase {
         result.put(SRC_AS_NAME, "RCS & RDS SA");
         result.put(DST_AS_NAME, "Akamai Technologies European AS");
 
-        enrichMessage = geoIpEnrich.enrich(message);
-        assertEquals(result, enrichMessage);
+        geoIpEnrich.enrich(message);
+        assertEquals(result, message);
+        assertNotNull(geoIpEnrich.cache);
     }
 }
@@ -0,0 +1,73 @@
+package net.redborder.samza.enrichments;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GeoIpProviderTest extends TestCase {
+
+    private static String[] databases(File dir) throws IOException {
+        File source = new File(ClassLoader.getSystemResource("asn.dat").getFile());
+        String[] paths = new String[4];
+
+        // Any data base file loads, lookups are not checked here
+        for (int i = 0; i < paths.length; i++) {
+            File file = new File(dir, "db" + i + ".dat");
+            Files.copy(source.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            paths[i] = file.getPath();
+        }
+
+        return paths;
+    }
+
+    @Test
+    public void sharesTheDatabasesOfTheSameFiles() throws IOException {
+        File dir = Files.createTempDirectory("geoip").toFile();
+        String[] paths = databases(dir);
+
+        GeoIpProvider provider = GeoIpProvider.get(paths[0], paths[1], paths[2], paths[3]);
+
+        assertSame(provider, GeoIpProvider.get(paths[0], paths[1], paths[2], paths[3]));
+        assertNotNull(provider.databases());
+    }
+
+    @Test
+    public void reloadsChangedDatabases() throws IOException {
+        File dir = Files.createTempDirectory("geoip").toFile();
+        String[] paths = databases(dir);
+
+        GeoIpProvider provider = new GeoIpProvider(paths);
+        GeoIpProvider.Databases loaded = provider.databases();
+
+        assertFalse(provider.reloadIfChanged());
+        assertSame(loaded, provider.databases());
+
+        assertTrue(new File(paths[2]).setLastModified(new File(paths[2]).lastModified() + 60000));
+        assertTrue(provider.reloadIfChanged());
+        assertNotSame(loaded, provider.databases());
+        assertFalse(provider.reloadIfChanged());
+    }
+
+    @Test
+    public void loadsDatabasesThatAppearLater() throws IOException {
+        File dir = Files.createTempDirectory("geoip").toFile();
+        String[] paths = databases(dir);
+        File moved = new File(dir, "moved.dat");
+        assertTrue(new File(paths[1]).renameTo(moved));
+
+        GeoIpProvider provider = new GeoIpProvider(paths);
+        assertNull(provider.databases());
+        assertFalse(provider.reloadIfChanged());
+
+        assertTrue(moved.renameTo(new File(paths[1])));
+        assertTrue(provider.reloadIfChanged());
+        assertNotNull(provider.databases());
+    }
+}
@@ -7,7 +7,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
+import java.util.Arrays;
 
 @RunWith(MockitoJUnitRunner.class)
 public class MacScrambleTest extends TestCase {
@@ -24,6 +27,42 @@ public class MacScrambleTest extends TestCase {
 
     }
 
+    @Test
+    public void prefixBelongsToEachScramble() throws GeneralSecurityException {
+        byte[] salt = Hex.decode("6A285A12B390A55E021EB983B20D5F4E");
+        MacScramble macScramble = new MacScramble(salt, null);
+        MacScramble prefixed = new MacScramble(salt, "another prefix");
+
+        assertEquals("ec:19:1a:2d:07:e7", toMac(macScramble.scrambleMac(Hex.decode("b418d16e8101")), ":"));
+        assertFalse("ec:19:1a:2d:07:e7".equals(toMac(prefixed.scrambleMac(Hex.decode("b418d16e8101")), ":")));
+        assertFalse(macScramble.scramblesLike(prefixed));
+    }
+
+    @Test
+    public void hmacModeTruncatesHmacSha256() throws GeneralSecurityException {
+        byte[] salt = Hex.decode("6A285A12B390A55E021EB983B20D5F4E");
+        MacScramble macScramble = new MacScramble(salt, "prefix", MacScramble.Mode.HMAC_SHA256);
+
+        Mac hmac = Mac.getInstance("HmacSHA256");
+        hmac.init(new SecretKeySpec(salt, "HmacSHA256"));
+
+        for (int i = 0; i < 3; i++) {
+            byte[] mac = Hex.decode("b418d16e810" + i);
+            hmac.update("prefix".getBytes());
+            byte[] expected = Arrays.copyOf(hmac.doFinal(mac), 6);
+
+            assertEquals(toMac(expected, ":"), toMac(macScramble.scrambleMac(mac), ":"));
+        }
+    }
+
+    @Test
+    public void parsesModes() {
+        assertEquals(MacScramble.Mode.HMAC_SHA256, MacScramble.Mode.fromName("hmac-sha256"));
+        assertEquals(MacScramble.Mode.PBKDF2, MacScramble.Mode.fromName("pbkdf2"));
+        assertEquals(MacScramble.Mode.PBKDF2, MacScramble.Mode.fromName(null));
+        assertEquals(MacScramble.Mode.PBKDF2, MacScramble.Mode.fromName("md5"));
+    }
+
     public static String toMac(final byte[] val, final String sep) {
         final StringBuilder sb = new StringBuilder(32);
         for (int a = 0; a < val.length; a++) {
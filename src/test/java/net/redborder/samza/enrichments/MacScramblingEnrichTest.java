@@ -0,0 +1,79 @@
+package net.redborder.samza.enrichments;
+
+import junit.framework.TestCase;
+import net.redborder.samza.util.MacScramble;
+import net.redborder.samza.util.PostgresqlManager;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.redborder.samza.util.constants.Dimension.CLIENT_MAC;
+import static net.redborder.samza.util.constants.Dimension.SERVICE_PROVIDER_UUID;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MacScramblingEnrichTest extends TestCase {
+
+    private static MacScramblingEnrich enrich(Map<String, MacScramble> scrambles) {
+        PostgresqlManager postgresqlManager = mock(PostgresqlManager.class);
+        when(postgresqlManager.getScrambles()).thenReturn(scrambles);
+
+        MacScramblingEnrich enrich = new MacScramblingEnrich();
+        enrich.setPostgresqlManager(postgresqlManager);
+        return enrich;
+    }
+
+    private static String scramble(MacScramblingEnrich enrich, String mac) {
+        Map<String, Object> message = new HashMap<>();
+        message.put(CLIENT_MAC, mac);
+        message.put(SERVICE_PROVIDER_UUID, "sp");
+
+        enrich.enrich(message);
+        return (String) message.get(CLIENT_MAC);
+    }
+
+    @Test
+    public void cachesScrambledMacs() {
+        Map<String, MacScramble> scrambles = new HashMap<>();
+        scrambles.put("sp", new MacScramble(Hex.decode("6A285A12B390A55E021EB983B20D5F4E"), null));
+        MacScramblingEnrich enrich = enrich(scrambles);
+
+        assertEquals("ec:19:1a:2d:07:e7", scramble(enrich, "b4:18:d1:6e:81:01"));
+        assertEquals("ec:19:1a:2d:07:e7", scramble(enrich, "B4:18:D1:6E:81:01"));
+        assertEquals("ec:19:1a:2d:07:e7", scramble(enrich, "b418d16e8101"));
+        assertEquals("cb:36:a8:1a:d9:2c", scramble(enrich, "b4:18:d1:6e:81:02"));
+
+        assertEquals(2, enrich.misses.getCount());
+        assertEquals(2, enrich.hits.getCount());
+        assertEquals(2, enrich.cache.size());
+    }
+
+    @Test
+    public void forgetsMacsOfRotatedSalts() {
+        Map<String, MacScramble> scrambles = new HashMap<>();
+        scrambles.put("sp", new MacScramble(Hex.decode("6A285A12B390A55E021EB983B20D5F4E"), null));
+        MacScramblingEnrich enrich = enrich(scrambles);
+
+        String first = scramble(enrich, "b4:18:d1:6e:81:01");
+        scrambles.put("sp", new MacScramble(Hex.decode("00112233445566778899AABBCCDDEEFF"), null));
+        String second = scramble(enrich, "b4:18:d1:6e:81:01");
+
+        assertFalse(first.equals(second));
+        assertEquals(0, enrich.hits.getCount());
+    }
+
+    @Test
+    public void parsesOnlyFullMacs() {
+        assertEquals(0xb418d16e8101L, MacScramblingEnrich.parseMac("b4:18:d1:6e:81:01"));
+        assertEquals(0xffffffffffffL, MacScramblingEnrich.parseMac("FFFFFFFFFFFF"));
+        assertEquals(-1, MacScramblingEnrich.parseMac("b4-18-d1-6e-81-01"));
+        assertEquals(-1, MacScramblingEnrich.parseMac("b4:18:d1:6e:81"));
+        assertEquals(-1, MacScramblingEnrich.parseMac("b4:18:d1:6e:81:0z"));
+        assertEquals(-1, MacScramblingEnrich.parseMac(""));
+    }
+}
@@ -23,22 +23,22 @@ public class MacVendorEnrichTest extends TestCase {
         Map<String, Object> messageApple = new HashMap<>();
         messageApple.put(CLIENT_MAC, "00:1C:B3:09:85:15");
 
-        Map<String, Object> enriched = macVendorEnrich.enrich(messageApple);
-        assertEquals("Apple", enriched.get(CLIENT_MAC_VENDOR));
+        macVendorEnrich.enrich(messageApple);
+        assertEquals("Apple", messageApple.get(CLIENT_MAC_VENDOR));
 
         // It doesn't define CLIENT_MAC_VENDOR field when the MAC is not found
         Map<String, Object> messageWithoutVendor = new HashMap<>();
         messageWithoutVendor.put(CLIENT_MAC, "AA:AA:AA:AA:AA:AA");
 
-        Map<String, Object> enrichedWithoutVendor = macVendorEnrich.enrich(messageWithoutVendor);
-        assertNull(enrichedWithoutVendor.get(CLIENT_MAC_VENDOR));
+        macVendorEnrich.enrich(messageWithoutVendor);
+        assertNull(messageWithoutVendor.get(CLIENT_MAC_VENDOR));
     }
 
     @Test
     public void logsWhenVendorFileNotFound() {
         MacVendorEnrich.ouiFilePath = "/this_path_doesnt_exist";
         MacVendorEnrich macVendorEnrich = new MacVendorEnrich();
-        assertTrue(macVendorEnrich.ouiMap.isEmpty());
+        assertEquals(0, macVendorEnrich.provider.index().size());
     }
 }
 
@@ -0,0 +1,94 @@
+package net.redborder.samza.enrichments;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MacVendorIndexTest extends TestCase {
+
+    private static MacVendorIndex index(String lines) throws IOException {
+        return MacVendorIndex.load(new StringReader(lines));
+    }
+
+    @Test
+    public void findsTheLongestPrefix() throws IOException {
+        MacVendorIndex index = index("001BC5|IEEE Registration Authority\n" +
+                "001BC5000|Converging Systems\n" +
+                "70B3D51|Some MA-M vendor\n" +
+                "70B3D5|IEEE Registration Authority\n");
+
+        assertEquals(4, index.size());
+        assertEquals("Converging Systems", index.vendor("00:1B:C5:00:01:23"));
+        assertEquals("IEEE Registration Authority", index.vendor("00:1B:C5:00:11:23"));
+        assertEquals("Some MA-M vendor", index.vendor("70:B3:D5:1A:BC:DE"));
+        assertEquals("IEEE Registration Authority", index.vendor("70:B3:D5:2A:BC:DE"));
+        assertNull(index.vendor("70:B3:D6:1A:BC:DE"));
+    }
+
+    @Test
+    public void readsAnyMacFormat() throws IOException {
+        MacVendorIndex index = index("001CB3|Apple\n");
+
+        assertEquals("Apple", index.vendor("00:1C:B3:09:85:15"));
+        assertEquals("Apple", index.vendor("00-1c-b3-09-85-15"));
+        assertEquals("Apple", index.vendor("001c.b309.8515"));
+        assertEquals("Apple", index.vendor(" 001CB3098515 "));
+        assertEquals("Apple", index.vendor("001CB3"));
+        assertNull(index.vendor("00:1C"));
+        assertNull(index.vendor("zz:1C:B3:09:85:15"));
+        assertNull(index.vendor(""));
+    }
+
+    @Test
+    public void skipsInvalidLines() throws IOException {
+        MacVendorIndex index = index("001CB3|Apple\n\nnot a prefix\nXYZXYZ|Nobody\n0011|Too short\n0011223344|Too long\n");
+
+        assertEquals(1, index.size());
+        assertEquals("Apple", index.vendor("00:1C:B3:09:85:15"));
+    }
+
+    @Test
+    public void sharesVendorNames() throws IOException {
+        MacVendorIndex index = index("000000|XEROX CORPORATION\n000001|XEROX CORPORATION\n");
+        assertSame(index.vendor("00:00:00:11:22:33"), index.vendor("00:00:01:11:22:33"));
+    }
+
+    @Test
+    public void matchesTheVendorsFile() throws IOException {
+        File file = new File(ClassLoader.getSystemResource("mac_vendors").getFile());
+        Map<String, String> expected = new HashMap<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split("\\|");
+                expected.put(tokens[0], tokens[1]);
+            }
+        }
+
+        MacVendorIndex index;
+        try (Reader reader = new FileReader(file)) {
+            index = MacVendorIndex.load(reader);
+        }
+
+        assertEquals(expected.size(), index.size());
+
+        Random random = new Random(1);
+        Object[] ouis = expected.keySet().toArray();
+
+        for (int i = 0; i < 10000; i++) {
+            String oui = random.nextBoolean() ? (String) ouis[random.nextInt(ouis.length)]
+                    : String.format("%06X", random.nextInt(1 << 24));
+            String mac = oui.substring(0, 2) + ":" + oui.substring(2, 4) + ":" + oui.substring(4, 6) + ":12:34:56";
+
+            assertEquals(mac, expected.get(oui), index.vendor(mac));
+        }
+    }
+}
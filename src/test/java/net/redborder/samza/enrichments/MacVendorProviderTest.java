@@ -0,0 +1,64 @@
+package net.redborder.samza.enrichments;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MacVendorProviderTest extends TestCase {
+
+    private static void write(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+    }
+
+    @Test
+    public void sharesTheIndexOfTheSameFile() {
+        String path = ClassLoader.getSystemResource("mac_vendors").getFile();
+        MacVendorProvider provider = MacVendorProvider.get(path);
+
+        assertSame(provider, MacVendorProvider.get(path));
+        assertEquals("Apple", provider.index().vendor("00:1C:B3:09:85:15"));
+
+        MacVendorEnrich.ouiFilePath = path;
+        assertSame(provider, new MacVendorEnrich().provider);
+    }
+
+    @Test
+    public void reloadsChangedFiles() throws IOException {
+        File file = new File(Files.createTempDirectory("vendors").toFile(), "mac_vendors");
+        write(file, "001CB3|Apple\n");
+
+        MacVendorProvider provider = new MacVendorProvider(file.getPath());
+        assertTrue(provider.reloadIfChanged());
+        assertFalse(provider.reloadIfChanged());
+        MacVendorIndex loaded = provider.index();
+
+        write(file, "001CB3|Apple Inc.\n");
+        assertTrue(file.setLastModified(file.lastModified() + 60000));
+
+        assertTrue(provider.reloadIfChanged());
+        assertNotSame(loaded, provider.index());
+        assertEquals("Apple Inc.", provider.index().vendor("00:1C:B3:09:85:15"));
+    }
+
+    @Test
+    public void loadsFilesThatAppearLater() throws IOException {
+        File file = new File(Files.createTempDirectory("vendors").toFile(), "mac_vendors");
+
+        MacVendorProvider provider = new MacVendorProvider(file.getPath());
+        assertFalse(provider.reloadIfChanged());
+        assertEquals(0, provider.index().size());
+
+        write(file, "001CB3|Apple\n");
+        assertTrue(provider.reloadIfChanged());
+        assertEquals("Apple", provider.index().vendor("00:1C:B3:09:85:15"));
+    }
+}
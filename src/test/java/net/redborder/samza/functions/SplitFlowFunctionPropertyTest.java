@@ -0,0 +1,277 @@
+package net.redborder.samza.functions;
+
+import junit.framework.TestCase;
+import net.redborder.samza.util.FlowRecord;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Seconds;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.*;
+
+import static net.redborder.samza.util.constants.Dimension.*;
+
+/**
+ * Checks SplitFlowFunction against random flows: the per minute buckets must add
+ * up to the flow and must be exactly the ones the Joda based splitter produced.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class SplitFlowFunctionPropertyTest extends TestCase {
+    private static final int RUNS = 20000;
+
+    @Test
+    public void matchesJodaSplitter() {
+        Random random = new Random(1);
+
+        for (int run = 0; run < RUNS; run++) {
+            DateTime now = randomNow(random);
+            Map<String, Object> message = randomFlow(random, now, false);
+
+            List<Map<String, Object>> expected = legacySplit(new HashMap<>(message), now);
+            List<Map<String, Object>> result = SplitFlowFunction.split(new HashMap<>(message), now);
+
+            assertEquals(message.toString() + " at " + now, expected, result);
+        }
+    }
+
+    @Test
+    public void flowRecordsMatchJodaSplitter() {
+        Random random = new Random(2);
+
+        for (int run = 0; run < RUNS; run++) {
+            DateTime now = randomNow(random);
+            Map<String, Object> message = randomFlow(random, now, true);
+
+            List<Map<String, Object>> expected = legacySplit(new HashMap<>(message), now);
+            List<Map<String, Object>> result = SplitFlowFunction.split(new FlowRecord(message), now);
+
+            assertEquals(message.toString() + " at " + now, expected, result);
+        }
+    }
+
+    @Test
+    public void bucketsAddUpToTheFlow() {
+        Random random = new Random(3);
+        SplitFlowFunction.Buckets buckets = new SplitFlowFunction.Buckets();
+
+        for (int run = 0; run < RUNS; run++) {
+            DateTime now = randomNow(random);
+            long end = now.getMillis() / 1000 - random.nextInt(600);
+            long start = end - random.nextInt(3600);
+            long bytes = random.nextInt(Integer.MAX_VALUE);
+            long pkts = random.nextInt(100000);
+
+            Map<String, Object> message = new HashMap<>();
+            message.put(FIRST_SWITCHED, start);
+            message.put(TIMESTAMP, end);
+            message.put(BYTES, bytes);
+            message.put(PKTS, pkts);
+
+            assertTrue(SplitFlowFunction.split(message, now.getMillis(), now.getHourOfDay(), now.getMinuteOfHour(), buckets));
+
+            // The flow may have been moved inside the realtime window
+            start = (Long) message.get(FIRST_SWITCHED);
+            end = (Long) message.get(TIMESTAMP);
+
+            long bytesCount = 0;
+            long pktsCount = 0;
+            for (int i = 0; i < buckets.size(); i++) {
+                bytesCount += buckets.bytes(i);
+                pktsCount += buckets.pkts(i);
+
+                if (i == 0) {
+                    assertEquals(start, buckets.timestamp(i));
+                } else {
+                    assertEquals(0, buckets.timestamp(i) % 60);
+                    assertTrue(buckets.timestamp(i) > buckets.timestamp(i - 1));
+                    assertTrue(buckets.timestamp(i) <= end);
+                }
+            }
+
+            assertEquals(bytes, bytesCount);
+            assertEquals(pkts, pktsCount);
+            assertEquals(Math.max(1, (end + 59) / 60 - start / 60), buckets.size());
+        }
+    }
+
+    private static DateTime randomNow(Random random) {
+        long base = new DateTime(2014, 1, 1, 0, 0, DateTimeZone.UTC).getMillis();
+        long millis = base + (long) (random.nextDouble() * 3 * 365 * 24 * 3600 * 1000L);
+        return new DateTime(millis, DateTimeZone.UTC);
+    }
+
+    private static Map<String, Object> randomFlow(Random random, DateTime now, boolean longsOnly) {
+        Map<String, Object> message = new HashMap<>();
+        long nowSecs = now.getMillis() / 1000;
+        long end = nowSecs - 2 * 3600 + random.nextInt(4 * 3600);
+        long start = end - random.nextInt(2 * 3600) + (random.nextInt(10) == 0 ? random.nextInt(120) : 0);
+
+        if (random.nextInt(20) != 0) message.put(TIMESTAMP, end);
+        if (random.nextInt(20) != 0) message.put(FIRST_SWITCHED, start);
+        if (random.nextInt(10) != 0) message.put(DURATION, end - start);
+        message.put(CLIENT_MAC, "00:00:00:00:00:0" + random.nextInt(10));
+
+        long bytes = random.nextInt(Integer.MAX_VALUE);
+        long pkts = random.nextInt(100000);
+
+        switch (longsOnly ? 0 : random.nextInt(5)) {
+            case 0:
+                message.put(BYTES, bytes);
+                message.put(PKTS, pkts);
+                break;
+            case 1:
+                message.put(BYTES, (int) bytes);
+                message.put(PKTS, (int) pkts);
+                break;
+            case 2:
+                message.put(BYTES, String.valueOf(bytes));
+                break;
+            case 3:
+                message.put(PKTS, pkts);
+                break;
+            default:
+                message.put(BYTES, random.nextBoolean() ? "many" : 2.5);
+                message.put(PKTS, pkts);
+        }
+
+        return message;
+    }
+
+    // SplitFlowFunction.split as it was written with Joda DateTime, kept as the reference
+    private static List<Map<String, Object>> legacySplit(Map<String, Object> event, DateTime now) {
+        List<Map<String, Object>> generatedPackets = new ArrayList<>();
+
+        // last_switched is timestamp now
+        if (event.containsKey(FIRST_SWITCHED) && event.containsKey(TIMESTAMP)) {
+            DateTime packet_start = new DateTime(Long.parseLong(event.get(FIRST_SWITCHED).toString()) * 1000, DateTimeZone.UTC);
+            DateTime packet_end = new DateTime(Long.parseLong(event.get(TIMESTAMP).toString()) * 1000, DateTimeZone.UTC);
+            int now_hour = now.getHourOfDay();
+            int packet_end_hour = packet_end.getHourOfDay();
+
+            // Get the lower limit date time that a packet can have
+            DateTime limit;
+            if (now.getMinuteOfHour() < SplitFlowFunction.DELAYED_REALTIME_TIME) {
+                limit = now.minusHours(1).withMinuteOfHour(0);
+            } else {
+                limit = now.withMinuteOfHour(0);
+            }
+
+            // Discard too old events
+            if ((packet_end_hour == now_hour - 1 && now.getMinuteOfHour() > SplitFlowFunction.DELAYED_REALTIME_TIME) ||
+                    (now.getMillis() - packet_end.getMillis() > 1000 * 60 * 60)) {
+            } else if (packet_start.isBefore(limit)) {
+                // If the lower limit date time is overpassed, correct it
+                packet_start = limit;
+                event.put(FIRST_SWITCHED, limit.getMillis() / 1000);
+            }
+
+            // Correct events in the future
+            if (packet_end.isAfter(now) && ((packet_end.getHourOfDay() != packet_start.getHourOfDay()) ||
+                    (packet_end.getMillis() - now.getMillis() > 1000 * 60 * 60))) {
+                event.put(TIMESTAMP, now.getMillis() / 1000);
+                packet_end = now;
+
+                if (!packet_end.isAfter(packet_start)) {
+                    event.put(FIRST_SWITCHED, now.getMillis() / 1000);
+                    packet_start = now;
+                }
+            }
+
+            DateTime this_start;
+            DateTime this_end = packet_start;
+
+            long bytes = 0;
+            long pkts = 0;
+
+            try {
+                if (event.containsKey(BYTES))
+                    bytes = Long.parseLong(event.get(BYTES).toString());
+            } catch (NumberFormatException e) {
+                return generatedPackets;
+            }
+
+            try {
+                if (event.containsKey(PKTS))
+                    pkts = Long.parseLong(event.get(PKTS).toString());
+            } catch (NumberFormatException e) {
+                return generatedPackets;
+            }
+
+            long totalDiff = Seconds.secondsBetween(packet_start, packet_end).getSeconds();
+            long diff, this_bytes, this_pkts;
+            long bytes_count = 0;
+            long pkts_count = 0;
+
+            do {
+                this_start = this_end;
+                this_end = this_start.plusSeconds(60 - this_start.getSecondOfMinute());
+                if (this_end.isAfter(packet_end)) this_end = packet_end;
+                diff = Seconds.secondsBetween(this_start, this_end).getSeconds();
+
+                if (totalDiff == 0) this_bytes = bytes;
+                else this_bytes = (long) Math.ceil(bytes * diff / totalDiff);
+
+                if (totalDiff == 0) this_pkts = pkts;
+                else this_pkts = (long) Math.ceil(pkts * diff / totalDiff);
+
+                bytes_count += this_bytes;
+                pkts_count += this_pkts;
+
+                Map<String, Object> to_send = new HashMap<>();
+                to_send.putAll(event);
+                to_send.put(TIMESTAMP, this_start.getMillis() / 1000);
+                to_send.put(BYTES, this_bytes);
+                to_send.put(PKTS, this_pkts);
+                to_send.remove(FIRST_SWITCHED);
+                generatedPackets.add(to_send);
+            } while (this_end.isBefore(packet_end));
+
+            if (bytes != bytes_count || pkts != pkts_count) {
+                int last_index = generatedPackets.size() - 1;
+                Map<String, Object> last = generatedPackets.get(last_index);
+                long new_pkts = ((long) last.get(PKTS)) + (pkts - pkts_count);
+                long new_bytes = ((long) last.get(BYTES)) + (bytes - bytes_count);
+
+                if (new_pkts > 0) last.put(PKTS, new_pkts);
+                if (new_bytes > 0) last.put(BYTES, new_bytes);
+
+                generatedPackets.set(last_index, last);
+            }
+        } else if (event.containsKey(TIMESTAMP)) {
+            try {
+                if (event.containsKey(BYTES)){
+                    Long bytes = Long.parseLong(event.get(BYTES).toString());
+                    event.put(BYTES, bytes);
+                    generatedPackets.add(event);
+                } else {
+                    return generatedPackets;
+                }
+            } catch (NumberFormatException e) {
+                return generatedPackets;
+            }
+        } else {
+            try {
+                if (event.containsKey(BYTES)){
+                    Long bytes = Long.parseLong(event.get(BYTES).toString());
+                    event.put(BYTES, bytes);
+                    event.put(TIMESTAMP, now.getMillis() / 1000);
+                    generatedPackets.add(event);
+                } else {
+                    return generatedPackets;
+                }
+            } catch (NumberFormatException e) {
+                return generatedPackets;
+            }
+        }
+
+        // We will leave the duration of the message only on the first generated packet
+        for (Map<String, Object> packet : generatedPackets) {
+            if (generatedPackets.indexOf(packet) == 0) continue;
+            packet.remove(DURATION);
+        }
+
+        return generatedPackets;
+    }
+}
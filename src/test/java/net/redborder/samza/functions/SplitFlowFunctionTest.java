@@ -1,6 +1,8 @@
 package net.redborder.samza.functions;
 
 import junit.framework.TestCase;
+import net.redborder.samza.util.FlowBucket;
+import net.redborder.samza.util.FlowRecord;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -115,6 +117,43 @@ public class SplitFlowFunctionTest extends TestCase {
         assertEquals(expectedPackets, result);
     }
 
+    @Test
+    public void splitsFlowRecords() {
+        FlowRecord message = new FlowRecord();
+        DateTime firstSwitchDate = formatter.withZoneUTC().parseDateTime("2014-01-01 22:10:12");
+        DateTime timestampDate = formatter.withZoneUTC().parseDateTime("2014-01-01 22:11:42");
+        DateTime timeNowDate = formatter.withZoneUTC().parseDateTime("2014-01-01 22:15:16");
+
+        message.put(TIMESTAMP, secs(timestampDate));
+        message.put(FIRST_SWITCHED, secs(firstSwitchDate));
+        message.put(DURATION, 90L);
+        message.put(BYTES, "900");
+        message.put(PKTS, 90);
+        message.put(CLIENT_MAC, "00:00:00:00:00:00");
+
+        List<Map<String, Object>> expectedPackets = new ArrayList<>();
+        Map<String, Object> expected;
+
+        expected = new HashMap<>();
+        expected.put(TIMESTAMP, secs(firstSwitchDate));
+        expected.put(DURATION, 90L);
+        expected.put(BYTES, 480L);
+        expected.put(PKTS, 48L);
+        expected.put(CLIENT_MAC, "00:00:00:00:00:00");
+        expectedPackets.add(expected);
+
+        expected = new HashMap<>();
+        expected.put(TIMESTAMP, secs(formatter.withZoneUTC().parseDateTime("2014-01-01 22:11:00")));
+        expected.put(BYTES, 420L);
+        expected.put(PKTS, 42L);
+        expected.put(CLIENT_MAC, "00:00:00:00:00:00");
+        expectedPackets.add(expected);
+
+        List<Map<String, Object>> result = SplitFlowFunction.split(message, timeNowDate);
+        assertEquals(expectedPackets, result);
+        assertTrue(result.get(0) instanceof FlowBucket);
+    }
+
     @Test
     public void basicSpli() {
         Map<String, Object> message = new HashMap<>();
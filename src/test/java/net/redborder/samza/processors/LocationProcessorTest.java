@@ -8,6 +8,8 @@ import net.redborder.samza.util.MockKeyValueStore;
 import net.redborder.samza.util.MockMessageCollector;
 import net.redborder.samza.util.MockTaskContext;
 import org.apache.samza.config.Config;
+import org.apache.samza.system.OutgoingMessageEnvelope;
+import org.apache.samza.task.MessageCollector;
 import org.apache.samza.task.TaskContext;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -20,7 +22,10 @@ import org.mockito.stubbing.Answer;
 import java.util.*;
 
 import static net.redborder.samza.util.constants.Dimension.*;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -41,6 +46,21 @@ public class LocationProcessorTest extends TestCase {
 
     static TaskContext taskContext;
 
+    // Store keys as the legacy key encoder builds them
+    static Answer<String> legacyKey = new Answer<String>() {
+        @Override
+        public String answer(InvocationOnMock invocation) throws Throwable {
+            Object[] args = invocation.getArguments();
+            StringBuilder key = new StringBuilder();
+
+            for (int i = 1; i < args.length; i++) {
+                if (args[i] != null) key.append(args[i]);
+            }
+
+            return key.toString();
+        }
+    };
+
     @BeforeClass
     public static void initTest() {
         // This store uses an in-memory map instead of samza K/V RockDB
@@ -53,6 +73,7 @@ public class LocationProcessorTest extends TestCase {
         storeManager = mock(StoreManager.class);
         when(storeManager.getStore(LocationV10Processor.LOCATION_STORE)).thenReturn(storeLocation);
         when(storeManager.getStore(LocationV89Processor.LOCATION_STORE)).thenReturn(storeLocation);
+        when(storeManager.key(anyString(), anyVararg())).thenAnswer(legacyKey);
         when(storeManager.enrich(anyMap())).thenAnswer(new Answer<Map<String, Object>>() {
             @Override
             public Map<String, Object> answer(InvocationOnMock invocation) throws Throwable {
@@ -257,6 +278,90 @@ public class LocationProcessorTest extends TestCase {
         assertEquals(result, enrichmentMessage);
     }
 
+    @Test
+    public void locationProcessorV10EnrichesRepeatedClientsApart() {
+        final MockKeyValueStore store = new MockKeyValueStore();
+        final List<Long> counterWrites = new ArrayList<>();
+        final MockKeyValueLongStore counters = new MockKeyValueLongStore() {
+            @Override
+            public void put(String s, Long o) {
+                counterWrites.add(o);
+                super.put(s, o);
+            }
+        };
+
+        TaskContext context = new MockTaskContext() {
+            @Override
+            public Object getStore(String s) {
+                return s.equals("counter") ? counters : super.getStore(s);
+            }
+        };
+
+        StoreManager batchStoreManager = mock(StoreManager.class);
+        when(batchStoreManager.getStore(LocationV10Processor.LOCATION_STORE)).thenReturn(store);
+        when(batchStoreManager.key(anyString(), anyVararg())).thenAnswer(legacyKey);
+        // Records the floor each event finds in the location store when it is enriched
+        when(batchStoreManager.enrichAll(anyList())).thenAnswer(new Answer<List<Map<String, Object>>>() {
+            @Override
+            public List<Map<String, Object>> answer(InvocationOnMock invocation) throws Throwable {
+                List<Map<String, Object>> messages = (List<Map<String, Object>>) invocation.getArguments()[0];
+
+                for (Map<String, Object> message : messages) {
+                    Map<String, Object> location = store.get((String) message.get(CLIENT_MAC) + message.get(NAMESPACE_UUID));
+                    message.put("stored_floor", location.get(FLOOR));
+                }
+
+                return messages;
+            }
+        });
+
+        LocationV10Processor processor = new LocationV10Processor(batchStoreManager, new EnrichManager(), config, context);
+        final List<OutgoingMessageEnvelope> envelopes = new ArrayList<>();
+        MessageCollector collector = new MessageCollector() {
+            @Override
+            public void send(OutgoingMessageEnvelope envelope) {
+                envelopes.add(envelope);
+            }
+        };
+
+        List<Map<String, Object>> notifications = new ArrayList<>();
+        // The earlier location of a client wins over a new one, so its first has no floor
+        notifications.add(locationUpdate("00:00:00:00:00:01", null));
+        notifications.add(locationUpdate("00:00:00:00:00:02", "Campus>Building>Floor2"));
+        notifications.add(locationUpdate("00:00:00:00:00:01", "Campus>Building>Floor3"));
+        Map<String, Object> message = new HashMap<>();
+        message.put(LOC_NOTIFICATIONS, notifications);
+
+        processor.processLocationUpdate(message, collector);
+
+        assertEquals(3, envelopes.size());
+        String[] macs = {"00:00:00:00:00:01", "00:00:00:00:00:02", "00:00:00:00:00:01"};
+        String[] floors = {null, "Floor2", "Floor3"};
+
+        for (int i = 0; i < envelopes.size(); i++) {
+            Map<String, Object> event = (Map<String, Object>) envelopes.get(i).getMessage();
+            assertEquals(macs[i], envelopes.get(i).getKey());
+            assertEquals(floors[i], event.get(FLOOR));
+            assertEquals(floors[i], event.get("stored_floor"));
+        }
+
+        // The repeated client splits the notification in two batches, each writes the counter once
+        assertEquals(Long.valueOf(3L), counters.get("rb_location_11111111"));
+        assertEquals(Arrays.asList(2L, 3L), counterWrites);
+    }
+
+    private static Map<String, Object> locationUpdate(String mac, String mapHierarchy) {
+        Map<String, Object> notification = new HashMap<>();
+        notification.put(LOC_NOTIFICATION_TYPE, "locationupdate");
+        notification.put(LOC_SUBSCRIPTION_NAME, "rb-loc");
+        notification.put(LOC_DEVICEID, mac);
+        notification.put(LOC_AP_MACADDR, "AA:AA:AA:AA:AA:AA");
+        if (mapHierarchy != null) notification.put(LOC_MAP_HIERARCHY_V10, mapHierarchy);
+        notification.put(TIMESTAMP, Long.valueOf(1424767310026L));
+        notification.put(NAMESPACE_UUID, "11111111");
+        return notification;
+    }
+
     @Test
     public void checkName() {
         assertEquals("loc", locationProcessor.getName());
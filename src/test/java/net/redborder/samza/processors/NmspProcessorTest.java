@@ -26,6 +26,8 @@ import static net.redborder.samza.util.constants.Dimension.*;
 import static net.redborder.samza.util.constants.DimensionValue.NMSP_TYPE_INFO;
 import static net.redborder.samza.util.constants.DimensionValue.NMSP_TYPE_MEASURE;
 import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -62,6 +64,19 @@ public class NmspProcessorTest extends TestCase {
         when(config.getInt("redborder.rssiLimit.db", -80)).thenReturn(-80);
         when(storeManager.getStore(NmspProcessor.NMSP_STORE_MEASURE)).thenReturn(storeMeasure);
         when(storeManager.getStore(NmspProcessor.NMSP_STORE_INFO)).thenReturn(storeInfo);
+        when(storeManager.key(anyString(), anyVararg())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                Object[] args = invocation.getArguments();
+                StringBuilder key = new StringBuilder();
+
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i] != null) key.append(args[i]);
+                }
+
+                return key.toString();
+            }
+        });
         when(storeManager.enrich(anyMap())).thenAnswer(new Answer<Map<String, Object>>() {
             @Override
             public Map<String, Object> answer(InvocationOnMock invocation) throws Throwable {
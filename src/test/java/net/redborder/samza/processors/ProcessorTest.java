@@ -86,6 +86,37 @@ public class ProcessorTest extends TestCase {
             assertEquals(message, result);
         }
     }
-}
 
+    @Test
+    public void processorsAreNotSharedBetweenPipelines() {
+        Config config = mock(Config.class);
+        when(config.getList("redborder.processors.rb_flow")).thenReturn(Arrays.asList("net.redborder.samza.processors.FlowProcessor"));
 
+        List<Processor> first = Processor.getProcessors("rb_flow", config, taskContext, null, null);
+        List<Processor> second = Processor.getProcessors("rb_flow", config, taskContext, null, null);
+        assertNotSame(first.get(0), second.get(0));
+    }
+
+    @Test
+    public void pipelineDispatchesToEveryProcessor() {
+        Config config = mock(Config.class);
+        when(config.getList("redborder.processors.rb_flow")).thenReturn(Arrays.asList("net.redborder.samza.processors.FlowProcessor"));
+
+        TaskContext context = mock(TaskContext.class);
+        StoreManager storeManager = new StoreManager(config, context);
+        ProcessorPipeline pipeline = ProcessorPipeline.build("rb_flow", config, taskContext, storeManager, null);
+        assertEquals("rb_flow", pipeline.getStream());
+        assertEquals(1, pipeline.size());
+
+        Map<String, Object> message = new HashMap<>();
+        message.put(CLIENT_MAC, "AA:AA:AA:AA:AA:AA");
+        message.put(BYTES, 43L);
+        message.put(PKTS, 3L);
+        message.put(TIMESTAMP, Long.valueOf(1429088471L));
+
+        MockMessageCollector collector = new MockMessageCollector();
+        pipeline.process(message, collector);
+
+        assertEquals(1, collector.getResult().size());
+    }
+}
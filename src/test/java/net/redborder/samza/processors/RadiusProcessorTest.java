@@ -24,6 +24,8 @@ import java.util.Map;
 
 import static net.redborder.samza.util.constants.Dimension.*;
 import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -90,6 +92,19 @@ public class RadiusProcessorTest extends TestCase {
         // that we just instantiated
         storeManager = mock(StoreManager.class);
         when(storeManager.getStore(RadiusProcessor.RADIUS_STORE)).thenReturn(storeRadius);
+        when(storeManager.key(anyString(), anyVararg())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                Object[] args = invocation.getArguments();
+                StringBuilder key = new StringBuilder();
+
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i] != null) key.append(args[i]);
+                }
+
+                return key.toString();
+            }
+        });
         when(storeManager.enrich(anyMap())).thenAnswer(new Answer<Map<String, Object>>() {
             @Override
             public Map<String, Object> answer(InvocationOnMock invocation) throws Throwable {
@@ -0,0 +1,192 @@
+package net.redborder.samza.serializers;
+
+import junit.framework.TestCase;
+import net.redborder.samza.util.FlowBucket;
+import net.redborder.samza.util.FlowRecord;
+import org.apache.samza.SamzaException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.*;
+
+import static net.redborder.samza.util.constants.Dimension.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FlowJsonSerdeTest extends TestCase {
+    static List<byte[]> samples = new ArrayList<>();
+    static ObjectMapper mapper = new ObjectMapper();
+    static FlowJsonSerde serde = new FlowJsonSerde();
+
+    @BeforeClass
+    public static void initTest() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream("src/test/resources/rb_flow_samples.json"), "UTF-8"));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty()) samples.add(line.getBytes("UTF-8"));
+        }
+
+        reader.close();
+    }
+
+    @Test
+    public void decodesLikeJackson() throws IOException {
+        for (byte[] sample : samples) {
+            Map<String, Object> expected = mapper.readValue(sample, Map.class);
+            Map<String, Object> message = (Map<String, Object>) serde.fromBytes(sample);
+
+            assertTrue(message instanceof FlowRecord);
+            assertEquals(expected.keySet(), message.keySet());
+
+            for (Map.Entry<String, Object> entry : expected.entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Map || value instanceof List) continue;
+
+                // Integral flow dimensions are read back as longs, strings stay as they came
+                if (FlowRecord.slot(entry.getKey()) >= 0 && value instanceof Integer) {
+                    value = ((Integer) value).longValue();
+                }
+
+                assertEquals(entry.getKey(), value, message.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void encodesWhatJacksonReadsBack() throws IOException {
+        for (byte[] sample : samples) {
+            Map<String, Object> expected = mapper.readValue(sample, Map.class);
+            byte[] encoded = serde.toBytes(serde.fromBytes(sample));
+
+            assertEquals(normalize(expected), normalize(mapper.readValue(encoded, Map.class)));
+        }
+    }
+
+    @Test
+    public void keepsNestedValuesRaw() {
+        String json = "{\"bytes\":10,\"location\":{\"floor\":2, \"tags\":[\"a\",\"}\"]},\"src\":\"10.0.0.1\"}";
+        Map<String, Object> message = (Map<String, Object>) serde.fromBytes(json.getBytes());
+
+        assertEquals(new RawJson("{\"floor\":2, \"tags\":[\"a\",\"}\"]}"), message.get("location"));
+        assertTrue(new String(serde.toBytes(message)).contains("\"location\":{\"floor\":2, \"tags\":[\"a\",\"}\"]}"));
+    }
+
+    @Test
+    public void numericDimensionsGoToSlots() {
+        String json = "{\"timestamp\":1429088471,\"first_switched\":1429088400,\"bytes\":\"999\",\"pkts\":9,\"src_port\":53}";
+        FlowRecord record = (FlowRecord) serde.fromBytes(json.getBytes());
+
+        assertTrue(record.hasLong(FlowRecord.TIMESTAMP));
+        assertTrue(record.hasLong(FlowRecord.FIRST_SWITCHED));
+        assertFalse(record.hasLong(FlowRecord.BYTES));
+        assertEquals(999L, record.getLong(FlowRecord.BYTES));
+        assertEquals(9L, record.getLong(FlowRecord.PKTS));
+        assertEquals(53, record.get("src_port"));
+        assertTrue(new String(serde.toBytes(record)).contains("\"bytes\":\"999\""));
+    }
+
+    @Test
+    public void encodesPlainMaps() throws IOException {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put(SRC, "10.0.0.1");
+        message.put(BYTES, 23L);
+        message.put("rssi", -64);
+        message.put("snr", 31.5);
+        message.put("enabled", true);
+        message.put("nothing", null);
+        message.put("text", "quote \" slash \\ tab \t newline \n bell \u0007 accent á emoji 😀");
+        message.put("list", Arrays.asList("a", 1, Collections.singletonMap("b", false)));
+
+        Map<String, Object> decoded = mapper.readValue(serde.toBytes(message), Map.class);
+        assertEquals(normalize(message), normalize(decoded));
+    }
+
+    @Test
+    public void encodesSplitBuckets() throws IOException {
+        for (byte[] sample : samples) {
+            FlowRecord record = (FlowRecord) serde.fromBytes(sample);
+            Map<String, Object> plain = new HashMap<>(record);
+
+            for (Map<String, Object> parent : Arrays.asList(record, plain)) {
+                FlowBucket first = new FlowBucket(parent, 1429088400L, 899L, 89L, true);
+                FlowBucket second = new FlowBucket(parent, 1429088460L, 100L, 10L, false);
+
+                // Buckets must be written as the plain maps they stand for
+                for (FlowBucket bucket : Arrays.asList(first, second)) {
+                    Map<String, Object> expected = mapper.readValue(serde.toBytes(new HashMap<>(bucket)), Map.class);
+                    assertEquals(expected, mapper.readValue(serde.toBytes(bucket), Map.class));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decodesEscapedStrings() {
+        String json = "{\"text\":\"quote \\\" slash \\\\ \\/ \\b\\f\\n\\r\\t \\u00e1 \\ud83d\\ude00\", \"plain\" : \"Málaga\" }";
+        Map<String, Object> message = (Map<String, Object>) serde.fromBytes(utf8(json));
+
+        assertEquals("quote \" slash \\ / \b\f\n\r\t á 😀", message.get("text"));
+        assertEquals("Málaga", message.get("plain"));
+    }
+
+    @Test
+    public void decodesNumbersLikeJackson() {
+        String json = "{\"a\":2147483647,\"b\":2147483648,\"c\":-9223372036854775808,\"d\":9223372036854775808,\"e\":-1.5e3}";
+        Map<String, Object> message = (Map<String, Object>) serde.fromBytes(json.getBytes());
+
+        assertEquals(Integer.MAX_VALUE, message.get("a"));
+        assertEquals(2147483648L, message.get("b"));
+        assertEquals(Long.MIN_VALUE, message.get("c"));
+        assertEquals(new java.math.BigInteger("9223372036854775808"), message.get("d"));
+        assertEquals(-1500.0, message.get("e"));
+    }
+
+    @Test
+    public void rejectsInvalidMessages() {
+        String[] invalid = new String[]{"", "[1,2]", "{\"a\":}", "{\"a\":1", "{\"a\":\"b}", "{\"a\":1}x", "{\"a\":tru}"};
+
+        for (String json : invalid) {
+            try {
+                serde.fromBytes(json.getBytes());
+                fail("Expected SamzaException for " + json);
+            } catch (SamzaException e) {
+                // Invalid messages fail the same way the stock serde does
+            }
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Jackson reads back small longs as integers, so compare them by value
+    private static Object normalize(Object value) {
+        if (value instanceof Map) {
+            Map<Object, Object> normalized = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                normalized.put(entry.getKey(), normalize(entry.getValue()));
+            }
+            return normalized;
+        } else if (value instanceof List) {
+            List<Object> normalized = new ArrayList<>();
+            for (Object item : (List<?>) value) normalized.add(normalize(item));
+            return normalized;
+        } else if (value instanceof Integer || value instanceof Long) {
+            return ((Number) value).longValue();
+        } else {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package net.redborder.samza.serializers;
+
+import junit.framework.TestCase;
+import org.apache.samza.SamzaException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.*;
+
+import static net.redborder.samza.util.constants.Dimension.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StoreValueSerdeTest extends TestCase {
+    static StoreValueSerde serde = new StoreValueSerde();
+
+    private static Map<String, Object> location() {
+        Map<String, Object> value = new HashMap<>();
+        value.put(CLIENT_MAC, "00:11:22:33:44:55");
+        value.put(WIRELESS_STATION, "aa:bb:cc:dd:ee:ff");
+        value.put(CAMPUS, "Campus Ñandú");
+        value.put(CLIENT_RSSI_NUM, -72);
+        value.put("last_seen", 1459166400L);
+        value.put(CLIENT_LATLNG, "37.38,-5.98");
+        value.put("custom_field", Arrays.asList(1.5, true, null, "text"));
+        value.put("custom_map", Collections.singletonMap("nested", Long.MIN_VALUE));
+        return value;
+    }
+
+    @Test
+    public void readsBackWhatItWrites() {
+        Map<String, Object> value = location();
+        byte[] bytes = serde.toBytes(value);
+
+        assertEquals(StoreValueSerde.VERSION, bytes[0]);
+        assertEquals(value, serde.fromBytes(bytes));
+        assertEquals(Integer.MAX_VALUE, serde.fromBytes(serde.toBytes(Integer.MAX_VALUE)));
+        assertEquals(42L, serde.fromBytes(serde.toBytes(42L)));
+        assertEquals(0.25f, serde.fromBytes(serde.toBytes(0.25f)));
+        assertEquals("", serde.fromBytes(serde.toBytes("")));
+        assertNull(serde.fromBytes(serde.toBytes(null)));
+    }
+
+    @Test
+    public void isSmallerThanJson() throws Exception {
+        Map<String, Object> value = location();
+        byte[] json = new ObjectMapper().writeValueAsBytes(value);
+
+        assertTrue(serde.toBytes(value).length < json.length * 3 / 4);
+    }
+
+    @Test
+    public void readsJsonValues() throws Exception {
+        Map<String, Object> value = location();
+        ObjectMapper mapper = new ObjectMapper();
+        byte[] json = mapper.writeValueAsBytes(value);
+
+        assertEquals(mapper.readValue(json, Object.class), serde.fromBytes(json));
+        assertEquals(7, serde.fromBytes("7".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void rejectsUnknownVersions() {
+        byte[] bytes = serde.toBytes(location());
+        bytes[0] = 2;
+
+        try {
+            serde.fromBytes(bytes);
+            fail();
+        } catch (SamzaException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void hasUniqueFields() {
+        assertEquals(StoreValueSerde.FIELDS.length, new HashSet<>(Arrays.asList(StoreValueSerde.FIELDS)).size());
+    }
+}
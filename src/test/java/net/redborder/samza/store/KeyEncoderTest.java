@@ -0,0 +1,71 @@
+package net.redborder.samza.store;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.redborder.samza.util.constants.Dimension.CLIENT_MAC;
+import static net.redborder.samza.util.constants.Dimension.NAMESPACE_UUID;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KeyEncoderTest extends TestCase {
+    private static final String MAC = "00:11:22:aa:bb:cc";
+    private static final String NAMESPACE = "11111111-2222-3333-4444-555555555555";
+
+    private static Map<String, Object> message(Object mac, Object namespace) {
+        Map<String, Object> message = new HashMap<>();
+        if (mac != null) message.put(CLIENT_MAC, mac);
+        if (namespace != null) message.put(NAMESPACE_UUID, namespace);
+        return message;
+    }
+
+    @Test
+    public void legacyConcatenatesPresentFields() {
+        KeyEncoder encoder = new KeyEncoder(Arrays.asList(CLIENT_MAC, NAMESPACE_UUID), null);
+
+        assertFalse(encoder.isCompact());
+        assertEquals(MAC + NAMESPACE, encoder.encode(message(MAC, NAMESPACE)));
+        assertEquals(MAC, encoder.encode(message(MAC, null)));
+        assertEquals(MAC, encoder.encode(MAC, ""));
+        assertEquals(MAC, encoder.encode(MAC));
+    }
+
+    @Test
+    public void compactPacksMacsAndUuids() {
+        KeyEncoder encoder = new KeyEncoder(Arrays.asList(CLIENT_MAC, NAMESPACE_UUID), KeyEncoder.COMPACT);
+        String key = encoder.encode(message(MAC, NAMESPACE));
+
+        assertTrue(encoder.isCompact());
+        assertEquals(1 + 8 + 1 + 22, key.length());
+        assertEquals(key, encoder.encode(MAC, NAMESPACE));
+        assertEquals(key, encoder.encode(MAC.toUpperCase(), NAMESPACE.toUpperCase()));
+        assertEquals(key, encoder.encode("001122aabbcc", NAMESPACE));
+        assertFalse(key.equals(encoder.encode(MAC, "11111111-2222-3333-4444-555555555556")));
+    }
+
+    @Test
+    public void compactKeepsMissingFieldsApart() {
+        KeyEncoder encoder = new KeyEncoder(Arrays.asList(CLIENT_MAC, NAMESPACE_UUID), KeyEncoder.COMPACT);
+
+        assertEquals(encoder.encode(message(MAC, null)), encoder.encode(MAC, ""));
+        assertEquals(encoder.encode(message(MAC, null)), encoder.encode(MAC));
+        assertFalse(encoder.encode(MAC, null).equals(encoder.encode(null, MAC)));
+        assertFalse(encoder.encode("ab", "c").equals(encoder.encode("a", "bc")));
+        assertEquals("s4:name~", encoder.encode("name", null));
+    }
+
+    @Test
+    public void rejectsUnknownFormats() {
+        try {
+            new KeyEncoder(Arrays.asList(CLIENT_MAC), "binary");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package net.redborder.samza.store;
+
+import junit.framework.TestCase;
+import net.redborder.samza.util.MockKeyValueStore;
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.Gauge;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ObjectCacheStoreTest extends TestCase {
+
+    private static class CountingStore extends MockKeyValueStore {
+        int gets;
+
+        @Override
+        public Map<String, Object> get(String s) {
+            gets++;
+            return super.get(s);
+        }
+
+        @Override
+        public Map<String, Map<String, Object>> getAll(java.util.List<String> keys) {
+            Map<String, Map<String, Object>> values = new HashMap<>();
+            for (String key : keys) {
+                gets++;
+                Map<String, Object> value = super.get(key);
+                if (value != null) values.put(key, value);
+            }
+
+            return values;
+        }
+    }
+
+    private static Map<String, Object> value(String name) {
+        Map<String, Object> value = new HashMap<>();
+        value.put("name", name);
+        return value;
+    }
+
+    private static ObjectCacheStore<Map<String, Object>> cache(CountingStore store, int capacity, Counter hits, Counter misses, Counter evictions) {
+        return new ObjectCacheStore<>(store, capacity, hits, misses, evictions, new Gauge<>("hit-ratio", 0.0));
+    }
+
+    @Test
+    public void readsEachKeyOnce() {
+        CountingStore store = new CountingStore();
+        store.put("a", value("a"));
+        Counter hits = new Counter("hits");
+        Counter misses = new Counter("misses");
+        ObjectCacheStore<Map<String, Object>> cache = cache(store, 10, hits, misses, new Counter("evictions"));
+
+        Map<String, Object> first = cache.get("a");
+        assertSame(first, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNull(cache.get("b"));
+
+        assertEquals(2, store.gets);
+        assertEquals(2, hits.getCount());
+        assertEquals(2, misses.getCount());
+    }
+
+    @Test
+    public void staysCoherentWithWrites() {
+        CountingStore store = new CountingStore();
+        ObjectCacheStore<Map<String, Object>> cache = cache(store, 10, new Counter("hits"), new Counter("misses"), new Counter("evictions"));
+
+        assertNull(cache.get("a"));
+        cache.put("a", value("first"));
+        assertEquals("first", cache.get("a").get("name"));
+        assertEquals("first", store.get("a").get("name"));
+
+        cache.put("a", value("second"));
+        assertEquals("second", cache.get("a").get("name"));
+
+        cache.delete("a");
+        assertNull(cache.get("a"));
+        assertNull(store.get("a"));
+
+        cache.put("b", value("b"));
+        cache.deleteAll(Arrays.asList("b"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        CountingStore store = new CountingStore();
+        Counter evictions = new Counter("evictions");
+        ObjectCacheStore<Map<String, Object>> cache = cache(store, 2, new Counter("hits"), new Counter("misses"), evictions);
+
+        cache.put("a", value("a"));
+        cache.put("b", value("b"));
+        cache.get("a");
+        cache.put("c", value("c"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, evictions.getCount());
+
+        store.gets = 0;
+        assertEquals("a", cache.get("a").get("name"));
+        assertEquals(0, store.gets);
+        assertEquals("b", cache.get("b").get("name"));
+        assertEquals(1, store.gets);
+    }
+
+    @Test
+    public void getsOnlyMissingKeysFromTheStore() {
+        CountingStore store = new CountingStore();
+        store.put("a", value("a"));
+        store.put("b", value("b"));
+        ObjectCacheStore<Map<String, Object>> cache = cache(store, 10, new Counter("hits"), new Counter("misses"), new Counter("evictions"));
+
+        cache.get("a");
+        store.gets = 0;
+
+        Map<String, Map<String, Object>> values = cache.getAll(Arrays.asList("a", "b", "c"));
+        assertEquals(2, values.size());
+        assertEquals("b", values.get("b").get("name"));
+        assertEquals(2, store.gets);
+
+        values = cache.getAll(Arrays.asList("a", "b", "c"));
+        assertEquals(2, values.size());
+        assertEquals(2, store.gets);
+    }
+}
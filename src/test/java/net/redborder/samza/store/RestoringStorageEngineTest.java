@@ -0,0 +1,105 @@
+package net.redborder.samza.store;
+
+import junit.framework.TestCase;
+import net.redborder.samza.util.MockKeyValueStore;
+import org.apache.samza.SamzaException;
+import org.apache.samza.metrics.Counter;
+import org.apache.samza.metrics.MetricsRegistryMap;
+import org.apache.samza.storage.StorageEngine;
+import org.apache.samza.system.IncomingMessageEnvelope;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RestoringStorageEngineTest extends TestCase {
+    private static final String GROUP = ParallelRestoreStorageEngineFactory.class.getName();
+
+    private static class SlowEngine extends MockKeyValueStore implements StorageEngine {
+        boolean failing;
+        boolean stopped;
+        boolean closed;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void restore(Iterator<IncomingMessageEnvelope> envelopes) {
+            if (failing) throw new RuntimeException("corrupted changelog");
+
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            while (envelopes.hasNext()) {
+                IncomingMessageEnvelope envelope = envelopes.next();
+                put((String) envelope.getKey(), (Map<String, Object>) envelope.getMessage());
+            }
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static Iterator<IncomingMessageEnvelope> changelog(int messages) {
+        List<IncomingMessageEnvelope> envelopes = new ArrayList<>();
+
+        for (int i = 0; i < messages; i++) {
+            Map<String, Object> value = Collections.<String, Object>singletonMap("offset", i);
+            envelopes.add(new IncomingMessageEnvelope(null, String.valueOf(i), "key-" + i, value));
+        }
+
+        return envelopes.iterator();
+    }
+
+    @Test
+    public void waitsForTheRestoreBeforeReading() {
+        MetricsRegistryMap registry = new MetricsRegistryMap();
+        SlowEngine engine = new SlowEngine();
+        RestoringStorageEngine<String, Map<String, Object>> store =
+                new RestoringStorageEngine<>("location", engine, 1000, registry);
+
+        store.restore(changelog(2500));
+
+        assertEquals(2499, store.get("key-2499").get("offset"));
+        assertEquals(2500, ((Counter) registry.getGroup(GROUP).get("location-restored-messages")).getCount());
+
+        store.stop();
+        assertTrue(engine.stopped);
+    }
+
+    @Test
+    public void reportsFailedRestores() {
+        SlowEngine engine = new SlowEngine();
+        engine.failing = true;
+        RestoringStorageEngine<String, Map<String, Object>> store =
+                new RestoringStorageEngine<>("location", engine, 10, new MetricsRegistryMap());
+
+        store.restore(changelog(100));
+
+        try {
+            store.get("key-0");
+            fail();
+        } catch (SamzaException e) {
+            // expected
+        }
+
+        store.close();
+        assertTrue(engine.closed);
+        store.stop();
+        assertTrue(engine.stopped);
+    }
+}
@@ -111,12 +111,12 @@ public class StoreManagerTest extends TestCase {
             storeManager.getStore(store).put(mergeKey, cache);
         }
 
-        Map<String, Object> enrichCache = storeManager.enrich(message);
+        Map<String, Object> enrichCache = storeManager.enrich(new HashMap<>(message));
         assertEquals(result, enrichCache);
 
         message.put(NAMESPACE_UUID, namespace_id_b);
 
-        Map<String, Object> enrichCacheWithoutNamespace = storeManager.enrich(message);
+        Map<String, Object> enrichCacheWithoutNamespace = storeManager.enrich(new HashMap<>(message));
         Map<String, Object> result1 = new HashMap<>();
         result1.putAll(message);
         result1.put("postgresql-enrichment-key" + namespace_id_a, "postgresql-enrichment-value");
@@ -141,5 +141,39 @@ public class StoreManagerTest extends TestCase {
         Map<String, Object> enrichCache = storeManager.enrich(message);
         assertEquals(result, enrichCache);
     }
-}
 
+    @Test
+    public void enrichesBatchesLikeSingleMessages() {
+        List<String> macs = Arrays.asList("batch-mac-a", "batch-mac-b", "batch-mac-a", "batch-mac-missing");
+
+        for (String store : stores) {
+            for (String mac : Arrays.asList("batch-mac-a", "batch-mac-b")) {
+                Map<String, Object> cache = new HashMap<>();
+                cache.put(store + "-batch", mac);
+                cache.put(WIRELESS_STATION, "batch-ap-" + mac);
+
+                if (store.equals("postgresql")) {
+                    storeManager.getStore(store).put(storeManager.key(store, "batch-ap-" + mac), cache);
+                } else {
+                    storeManager.getStore(store).put(storeManager.key(store, mac, "tenant_batch"), cache);
+                }
+            }
+        }
+
+        List<Map<String, Object>> messages = new ArrayList<>();
+        List<Map<String, Object>> expected = new ArrayList<>();
+
+        for (String mac : macs) {
+            Map<String, Object> message = new HashMap<>();
+            message.put(CLIENT_MAC, mac);
+            message.put(NAMESPACE_UUID, "tenant_batch");
+            messages.add(message);
+            expected.add(storeManager.enrich(new HashMap<>(message)));
+        }
+
+        assertSame(messages, storeManager.enrichAll(messages));
+        assertEquals(expected, messages);
+        assertEquals("batch-mac-a", messages.get(2).get("postgresql-batch"));
+        assertNull(messages.get(3).get("location-batch"));
+    }
+}
@@ -0,0 +1,92 @@
+package net.redborder.samza.util;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static net.redborder.samza.util.constants.Dimension.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FlowBucketTest extends TestCase {
+
+    private static Map<String, Object> flow() {
+        Map<String, Object> flow = new HashMap<>();
+        flow.put(TIMESTAMP, 1429088471L);
+        flow.put(FIRST_SWITCHED, 1429088400L);
+        flow.put(DURATION, 71L);
+        flow.put(BYTES, 999L);
+        flow.put(PKTS, 99L);
+        flow.put(CLIENT_MAC, "00:00:00:00:00:00");
+        return flow;
+    }
+
+    @Test
+    public void overridesTheFlow() {
+        Map<String, Object> flow = flow();
+        FlowBucket bucket = new FlowBucket(flow, 1429088460L, 100L, 10L, false);
+
+        Map<String, Object> expected = new HashMap<>();
+        expected.put(TIMESTAMP, 1429088460L);
+        expected.put(BYTES, 100L);
+        expected.put(PKTS, 10L);
+        expected.put(CLIENT_MAC, "00:00:00:00:00:00");
+
+        assertEquals(expected, bucket);
+        assertEquals(bucket, expected);
+        assertEquals(expected.hashCode(), bucket.hashCode());
+        assertFalse(bucket.containsKey(FIRST_SWITCHED));
+        assertNull(bucket.get(DURATION));
+    }
+
+    @Test
+    public void firstBucketKeepsTheDuration() {
+        Map<String, Object> flow = flow();
+        FlowBucket bucket = new FlowBucket(new FlowRecord(flow), 1429088400L, 899L, 89L, true);
+
+        assertEquals(71L, bucket.get(DURATION));
+        assertEquals(5, bucket.size());
+        assertEquals(5, new HashMap<>(bucket).size());
+
+        flow.remove(DURATION);
+        bucket = new FlowBucket(flow, 1429088400L, 899L, 89L, true);
+        assertFalse(bucket.containsKey(DURATION));
+        assertEquals(4, bucket.size());
+    }
+
+    @Test
+    public void writesDetachFromTheFlow() {
+        Map<String, Object> flow = flow();
+        FlowBucket first = new FlowBucket(flow, 1429088400L, 899L, 89L, true);
+        FlowBucket second = new FlowBucket(flow, 1429088460L, 100L, 10L, false);
+
+        first.put(CLIENT_MAC, "11:11:11:11:11:11");
+        first.remove(DURATION);
+
+        assertTrue(first.isDetached());
+        assertEquals("11:11:11:11:11:11", first.get(CLIENT_MAC));
+        assertEquals(899L, first.get(BYTES));
+        assertFalse(first.containsKey(DURATION));
+        assertEquals("00:00:00:00:00:00", second.get(CLIENT_MAC));
+        assertEquals(flow(), flow);
+    }
+
+    @Test
+    public void iteratorRemoveDetaches() {
+        Map<String, Object> flow = flow();
+        FlowBucket bucket = new FlowBucket(flow, 1429088460L, 100L, 10L, false);
+
+        Iterator<Map.Entry<String, Object>> iterator = bucket.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getKey().equals(CLIENT_MAC)) iterator.remove();
+        }
+
+        assertFalse(bucket.containsKey(CLIENT_MAC));
+        assertEquals(3, bucket.size());
+        assertEquals(flow(), flow);
+    }
+}
@@ -0,0 +1,109 @@
+package net.redborder.samza.util;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static net.redborder.samza.util.constants.Dimension.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FlowRecordTest extends TestCase {
+
+    @Test
+    public void numericDimensionsAreStoredAsLongs() {
+        Map<String, Object> message = new HashMap<>();
+        message.put(TIMESTAMP, 1429088471);
+        message.put(BYTES, "999");
+        message.put(PKTS, 99L);
+        message.put(CLIENT_MAC, "00:00:00:00:00:00");
+
+        FlowRecord record = new FlowRecord(message);
+
+        assertEquals(1429088471L, record.getLong(FlowRecord.TIMESTAMP));
+        assertEquals(999L, record.getLong(FlowRecord.BYTES));
+        assertFalse(record.hasLong(FlowRecord.BYTES));
+        assertEquals("999", record.get(BYTES));
+        assertEquals(99L, record.get(PKTS));
+        assertEquals("00:00:00:00:00:00", record.get(CLIENT_MAC));
+        assertFalse(record.has(FlowRecord.FIRST_SWITCHED));
+        assertEquals(4, record.size());
+    }
+
+    @Test
+    public void equalsPlainMap() {
+        Map<String, Object> message = new HashMap<>();
+        message.put(TIMESTAMP, 1429088471L);
+        message.put(BYTES, 23L);
+        message.put(CLIENT_MAC, "00:00:00:00:00:00");
+
+        FlowRecord record = new FlowRecord(message);
+
+        assertEquals(message, record);
+        assertEquals(record, message);
+        assertEquals(message.hashCode(), record.hashCode());
+    }
+
+    @Test
+    public void invalidNumbersAreKeptAsTheyCame() {
+        FlowRecord record = new FlowRecord();
+        record.put(BYTES, "a lot");
+
+        assertTrue(record.containsKey(BYTES));
+        assertEquals("a lot", record.get(BYTES));
+
+        try {
+            record.getLong(FlowRecord.BYTES);
+            fail("Expected NumberFormatException");
+        } catch (NumberFormatException e) {
+            // Same failure as parsing the value of a plain map
+        }
+
+        record.setLong(FlowRecord.BYTES, 10L);
+        assertEquals(10L, record.get(BYTES));
+        assertEquals(1, record.size());
+    }
+
+    @Test
+    public void copiesDoNotSeeEachOtherChanges() {
+        FlowRecord record = new FlowRecord();
+        record.put(TIMESTAMP, 1429088471L);
+        record.put(CLIENT_MAC, "00:00:00:00:00:00");
+
+        FlowRecord copy = record.copy();
+        copy.put(CLIENT_MAC, "11:11:11:11:11:11");
+        copy.setLong(FlowRecord.TIMESTAMP, 1L);
+        record.put(WIRELESS_STATION, "22:22:22:22:22:22");
+
+        assertEquals("00:00:00:00:00:00", record.get(CLIENT_MAC));
+        assertEquals(1429088471L, record.get(TIMESTAMP));
+        assertEquals("11:11:11:11:11:11", copy.get(CLIENT_MAC));
+        assertEquals(1L, copy.get(TIMESTAMP));
+        assertFalse(copy.containsKey(WIRELESS_STATION));
+    }
+
+    @Test
+    public void removesThroughIterator() {
+        FlowRecord record = new FlowRecord();
+        record.put(TIMESTAMP, 1429088471L);
+        record.put(DURATION, 0L);
+        record.put(CLIENT_MAC, "00:00:00:00:00:00");
+        record.put(WIRELESS_STATION, "00:00:00:00:00:00");
+        FlowRecord copy = record.copy();
+
+        Iterator<Map.Entry<String, Object>> iterator = record.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next().getKey();
+            if (key.equals(DURATION) || key.equals(CLIENT_MAC)) iterator.remove();
+        }
+
+        assertEquals(2, record.size());
+        assertFalse(record.containsKey(DURATION));
+        assertFalse(record.containsKey(CLIENT_MAC));
+        assertEquals(4, copy.size());
+    }
+}
@@ -0,0 +1,128 @@
+package net.redborder.samza.util;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Random;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IpAddressTest extends TestCase {
+
+    @Test
+    public void parsesIPv4() throws Exception {
+        assertEquals(0L, IpAddress.parseIPv4("0.0.0.0"));
+        assertEquals(0xffffffffL, IpAddress.parseIPv4("255.255.255.255"));
+        assertEquals(0x0a000001L, IpAddress.parseIPv4("010.0.0.001"));
+
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long expected = random.nextLong() & 0xffffffffL;
+            String ip = (expected >> 24) + "." + ((expected >> 16) & 0xff) + "." + ((expected >> 8) & 0xff) + "." + (expected & 0xff);
+
+            assertEquals(ip, expected, IpAddress.parseIPv4(ip));
+            assertEquals(ip, expected, toLong(InetAddress.getByName(ip).getAddress()));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidIPv4() {
+        String[] invalid = new String[]{"", "1", "1.2.3", "1.2.3.4.", ".1.2.3", "1.2.3.4.5", "256.0.0.1",
+                "1..2.3", "1.2.3.a", "1.2.3.0001", "1.2.3.4 ", "-1.2.3.4", "2001:db8::1", "host.example.com"};
+
+        for (String ip : invalid) {
+            assertEquals(ip, -1L, IpAddress.parseIPv4(ip));
+        }
+    }
+
+    @Test
+    public void parsesIPv6() throws Exception {
+        String[] valid = new String[]{"::", "::1", "1::", "2a02:26f0:8:183::90", "2001:DB8:0:0:8:800:200C:417A",
+                "fe80::202:b3ff:fe1e:8329", "::ffff:10.0.0.1", "64:ff9b::192.0.2.33", "1:2:3:4:5:6:7:8", "1:2:3:4:5:6:1.2.3.4"};
+
+        for (String ip : valid) {
+            byte[] address = new byte[16];
+            assertTrue(ip, IpAddress.parseIPv6(ip, address));
+            assertTrue(ip, Arrays.equals(ipv6(InetAddress.getByName(ip).getAddress()), address));
+        }
+
+        Random random = new Random(2);
+        for (int i = 0; i < 10000; i++) {
+            byte[] expected = new byte[16];
+            random.nextBytes(expected);
+
+            // Runs of zero groups so compression is exercised
+            int zeros = random.nextInt(9);
+            int from = random.nextInt(9 - zeros);
+            Arrays.fill(expected, from * 2, (from + zeros) * 2, (byte) 0);
+
+            String ip = format(expected, random);
+            byte[] address = new byte[16];
+
+            assertTrue(ip, IpAddress.parseIPv6(ip, address));
+            assertTrue(ip, Arrays.equals(expected, address));
+        }
+    }
+
+    @Test
+    public void rejectsInvalidIPv6() {
+        String[] invalid = new String[]{"", ":", ":::", "1:", ":1", "1:::2", "1::2::3", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9",
+                "1::2:3:4:5:6:7:8", "12345::", "g::", "1:2:3:4:5:6:7:1.2.3.4", "::1.2.3", "::1.2.3.4:5", "10.0.0.1", "::1 "};
+
+        for (String ip : invalid) {
+            assertFalse(ip, IpAddress.parseIPv6(ip, new byte[16]));
+        }
+    }
+
+    private static long toLong(byte[] address) {
+        long value = 0;
+        for (byte b : address) value = (value << 8) | (b & 0xff);
+        return value;
+    }
+
+    // InetAddress returns IPv4 mapped addresses as plain IPv4 ones
+    private static byte[] ipv6(byte[] address) {
+        if (address.length == 16) return address;
+
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte) 0xff;
+        mapped[11] = (byte) 0xff;
+        System.arraycopy(address, 0, mapped, 12, 4);
+        return mapped;
+    }
+
+    private static String format(byte[] address, Random random) {
+        // Longest run of zero groups, compressed half of the time
+        int bestFrom = -1;
+        int bestLength = 0;
+        for (int group = 0; group < 8; ) {
+            int length = 0;
+            while (group + length < 8 && address[(group + length) * 2] == 0 && address[(group + length) * 2 + 1] == 0) length++;
+            if (length > bestLength) {
+                bestFrom = group;
+                bestLength = length;
+            }
+            group += Math.max(length, 1);
+        }
+
+        boolean compress = bestLength > 0 && random.nextBoolean();
+        StringBuilder builder = new StringBuilder();
+
+        for (int group = 0; group < 8; group++) {
+            if (compress && group == bestFrom) {
+                builder.append("::");
+                group += bestLength - 1;
+                continue;
+            }
+
+            if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') builder.append(':');
+            String hex = Integer.toHexString(((address[group * 2] & 0xff) << 8) | (address[group * 2 + 1] & 0xff));
+            builder.append(random.nextBoolean() ? hex : hex.toUpperCase());
+        }
+
+        return builder.toString();
+    }
+}
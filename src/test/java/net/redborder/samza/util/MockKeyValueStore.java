@@ -36,7 +36,12 @@ public class MockKeyValueStore implements KeyValueStore<String, Map<String, Obje
 
     @Override
     public Map<String, Map<String, Object>> getAll(List<String> list) {
-        return null;
+        Map<String, Map<String, Object>> values = new HashMap<>();
+        for (String key : list) {
+            if (store.containsKey(key)) values.put(key, store.get(key));
+        }
+
+        return values;
     }
 
     @Override
@@ -0,0 +1,58 @@
+package net.redborder.samza.util;
+
+import junit.framework.TestCase;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PostgresqlManagerTest extends TestCase {
+
+    private static MacScramble scramble(String salt) {
+        return new MacScramble(Hex.decode(salt), null);
+    }
+
+    @Test
+    public void keepsTheScramblesOfUnchangedSalts() {
+        Map<String, MacScramble> read = new HashMap<>();
+        read.put("sp1", scramble("6A285A12B390A55E021EB983B20D5F4E"));
+        read.put("sp2", scramble("00112233445566778899AABBCCDDEEFF"));
+        read.put("sp4", scramble("00112233445566778899AABBCCDDEEFF"));
+
+        Map<String, MacScramble> first = PostgresqlManager.buildScrambles(read, Collections.<String, MacScramble>emptyMap());
+        assertEquals(3, first.size());
+
+        read.clear();
+        read.put("sp1", scramble("6A285A12B390A55E021EB983B20D5F4E"));
+        read.put("sp2", scramble("FFEEDDCCBBAA99887766554433221100"));
+        read.put("sp3", scramble("6A285A12B390A55E021EB983B20D5F4E"));
+        read.put("sp4", new MacScramble(Hex.decode("00112233445566778899AABBCCDDEEFF"), null, MacScramble.Mode.HMAC_SHA256));
+
+        Map<String, MacScramble> second = PostgresqlManager.buildScrambles(read, first);
+        assertEquals(4, second.size());
+        assertSame(first.get("sp1"), second.get("sp1"));
+        assertSame(read.get("sp2"), second.get("sp2"));
+        assertSame(read.get("sp3"), second.get("sp3"));
+        assertSame(read.get("sp4"), second.get("sp4"));
+    }
+
+    @Test
+    public void publishesImmutableSnapshots() {
+        Map<String, MacScramble> read = new HashMap<>();
+        read.put("sp1", scramble("6A285A12B390A55E021EB983B20D5F4E"));
+
+        Map<String, MacScramble> scrambles = PostgresqlManager.buildScrambles(read, Collections.<String, MacScramble>emptyMap());
+
+        try {
+            scrambles.clear();
+            fail("The scrambles can be modified");
+        } catch (UnsupportedOperationException e) {
+            assertEquals(1, scrambles.size());
+        }
+    }
+}